@@ -4,6 +4,7 @@
  */
 package javaapplication4;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -42,16 +43,40 @@ public class ASTNode {
         ARGUMENT_LIST,     // function arguments
         TYPE,              // data type
         ACCESS_MODIFIER,   // public/private
-        ERROR              // error node
+        ERROR;             // error node
+        
+        /**
+         * True for the nodes that never have children, reported to a
+         * ParseListener with terminal()
+         */
+        public boolean isTerminal() {
+            switch (this) {
+                case IDENTIFIER:
+                case NUMBER_LITERAL:
+                case STRING_LITERAL:
+                case CHAR_LITERAL:
+                case BOOL_LITERAL:
+                case TYPE:
+                case ACCESS_MODIFIER:
+                    return true;
+                default:
+                    return false;
+            }
+        }
     }
     
     private NodeType type;
     private Token token;
     private List<ASTNode> children;
-    private int line;
+    private int line;               // -1: taken from the token
     private int column;
     private String value;
     
+    // Source range, set by the Parser on statements, members and blocks
+    private Token firstToken;
+    private Token lastToken;
+    private int errorCount;         // syntax errors reported while parsing this node
+    
     public ASTNode(NodeType type) {
         this.type = type;
         this.children = new ArrayList<>();
@@ -64,8 +89,10 @@ public class ASTNode {
         this.type = type;
         this.token = token;
         this.children = new ArrayList<>();
-        this.line = token != null ? token.getLine() : 0;
-        this.column = token != null ? token.getColumn() : 0;
+        // Looked up from the token when asked for, so the position follows
+        // the token when an edit earlier in the source moves it
+        this.line = token != null ? -1 : 0;
+        this.column = token != null ? -1 : 0;
         this.value = token != null ? token.getLexeme() : null;
     }
     
@@ -90,10 +117,15 @@ public class ASTNode {
     }
     
     public void setToken(Token token) {
+        if (token == null && this.token != null) {
+            // Keep the position of the token being removed
+            this.line = getLine();
+            this.column = getColumn();
+        }
         this.token = token;
         if (token != null) {
-            this.line = token.getLine();
-            this.column = token.getColumn();
+            this.line = -1;
+            this.column = -1;
             this.value = token.getLexeme();
         }
     }
@@ -120,7 +152,7 @@ public class ASTNode {
     }
     
     public int getLine() {
-        return line;
+        return line < 0 ? token.getLine() : line;
     }
     
     public void setLine(int line) {
@@ -128,7 +160,7 @@ public class ASTNode {
     }
     
     public int getColumn() {
-        return column;
+        return column < 0 ? token.getColumn() : column;
     }
     
     public void setColumn(int column) {
@@ -143,6 +175,52 @@ public class ASTNode {
         this.value = value;
     }
     
+    /**
+     * First token of the node in the source. For a block this is its
+     * opening parenthesis. Null when the parser did not record a range.
+     */
+    public Token getFirstToken() {
+        return firstToken;
+    }
+    
+    /**
+     * Last token of the node (the closing parenthesis of a block)
+     */
+    public Token getLastToken() {
+        return lastToken;
+    }
+    
+    /**
+     * Offset of the first character of the node, or -1 without a range
+     */
+    public int getStartOffset() {
+        return firstToken != null ? firstToken.getOffset() : -1;
+    }
+    
+    /**
+     * Offset just past the last token of the node, or -1 without a range
+     */
+    public int getEndOffset() {
+        return lastToken != null ? lastToken.getOffset() + lastToken.getLexeme().length() : -1;
+    }
+    
+    void setRange(Token first, Token last) {
+        this.firstToken = first;
+        this.lastToken = last;
+    }
+    
+    int getErrorCount() {
+        return errorCount;
+    }
+    
+    void setErrorCount(int errorCount) {
+        this.errorCount = errorCount;
+    }
+    
+    void setChild(int index, ASTNode child) {
+        children.set(index, child);
+    }
+    
     public boolean isError() {
         return type == NodeType.ERROR;
     }
@@ -154,17 +232,59 @@ public class ASTNode {
         if (value != null && !value.isEmpty()) {
             sb.append(" [").append(value).append("]");
         }
-        sb.append(" (line:").append(line).append(")");
+        sb.append(" (line:").append(getLine()).append(")");
         return sb.toString();
     }
     
     /**
-     * Print tree structure for debugging
+     * Print tree structure for debugging. Walks the tree with an explicit
+     * stack, so a deeply nested tree cannot overflow the call stack.
      */
     public void printTree(String indent) {
-        System.out.println(indent + this.toString());
-        for (ASTNode child : children) {
-            child.printTree(indent + "  ");
+        ArrayDeque<ASTNode> nodes = new ArrayDeque<>();
+        ArrayDeque<Integer> levels = new ArrayDeque<>();
+        nodes.push(this);
+        levels.push(0);
+        StringBuilder line = new StringBuilder();
+        while (!nodes.isEmpty()) {
+            ASTNode node = nodes.pop();
+            int level = levels.pop();
+            line.setLength(0);
+            line.append(indent);
+            for (int i = 0; i < level; i++) line.append("  ");
+            System.out.println(line.append(node));
+            for (int i = node.children.size() - 1; i >= 0; i--) {
+                nodes.push(node.children.get(i));
+                levels.push(level + 1);
+            }
+        }
+    }
+    
+    /**
+     * Reports this node and everything below it to listener, in the same
+     * order as Parser.parse(ParseListener). Uses an explicit stack, like
+     * printTree().
+     */
+    public void walk(ParseListener listener) {
+        ArrayDeque<ASTNode> nodes = new ArrayDeque<>();
+        ArrayDeque<Boolean> exits = new ArrayDeque<>();     // true: the node's children are done
+        nodes.push(this);
+        exits.push(false);
+        while (!nodes.isEmpty()) {
+            ASTNode node = nodes.pop();
+            if (exits.pop()) {
+                listener.exitNode(node.type, node.token);
+            } else if (node.type.isTerminal()) {
+                listener.terminal(node.type, node.token);
+            } else {
+                listener.enterNode(node.type, node.token);
+                nodes.push(node);
+                exits.push(true);
+                for (int i = node.children.size() - 1; i >= 0; i--) {
+                    nodes.push(node.children.get(i));
+                    exits.push(false);
+                }
+            }
         }
     }
 }
@@ -4,6 +4,8 @@
  */
 package javaapplication4;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.ArrayList;
 
@@ -15,11 +17,18 @@ import java.util.ArrayList;
  */
 public class Analisis_Lexico
 {
+    // One reusable scanner per thread for batch analysis
+    private static final ThreadLocal<Scanner> POOLED_SCANNER =
+            ThreadLocal.withInitial(() -> new Scanner(""));
+    
     // For backward compatibility with existing code
     public String lexema;
     public String nombre;
     public int numero;
     
+    // Statistics of the last source scanned by this instance
+    private LexerStatistics statistics;
+    
     // Legacy fields - kept for compatibility (English keywords)
     String[][] diccionario = {
         {"structure", "PALABRA_RESERVADA", "1"},
@@ -114,11 +123,87 @@ public class Analisis_Lexico
     
     /**
      * NEW: Scan entire text and return all tokens
-     * This is the recommended method for full lexical analysis
+     * This is the recommended method for full lexical analysis.
+     * Any CharSequence works; pass a javax.swing.text.Segment filled by
+     * Document.getText(0, length, segment) to scan an editor's text
+     * without copying it into a String.
+     */
+    public List<Token> scan(CharSequence source) {
+        Scanner scanner = new Scanner(source);
+        List<Token> tokens = scanner.scanTokens();
+        statistics = scanner.getStatistics();
+        return tokens;
+    }
+    
+    /**
+     * Same as scan(), but large sources are lexed in chunks on several
+     * threads; the resulting tokens are identical
+     */
+    public List<Token> scanParallel(CharSequence source) {
+        Scanner scanner = new Scanner(source);
+        List<Token> tokens = scanner.scanTokensParallel();
+        statistics = scanner.getStatistics();
+        return tokens;
+    }
+    
+    /**
+     * Same as scan(), for input that may not be source code at all (binary
+     * or junk files): runs of bad characters give one error each, and after
+     * maxErrors errors the scan stops with a final "too many errors" token
      */
-    public List<Token> scan(String source) {
+    public List<Token> scanBounded(CharSequence source, int maxErrors) {
         Scanner scanner = new Scanner(source);
-        return scanner.scanTokens();
+        scanner.setMaxErrors(maxErrors);
+        scanner.setCoalesceErrors(true);
+        List<Token> tokens = scanner.scanTokens();
+        statistics = scanner.getStatistics();
+        return tokens;
+    }
+    
+    /**
+     * Same as scan(), but reuses a scanner kept for the calling thread, so
+     * analysing many sources does not allocate new buffers each time.
+     * The returned list is cleared and refilled by the next call on the
+     * same thread; copy it if it has to be kept.
+     */
+    public List<Token> scanReusing(CharSequence source) {
+        List<Token> tokens = scanPooled(source);
+        statistics = POOLED_SCANNER.get().getStatistics();
+        return tokens;
+    }
+    
+    static List<Token> scanPooled(CharSequence source) {
+        return POOLED_SCANNER.get().reset(source).scanTokens();
+    }
+    
+    /**
+     * Scan a UTF-8 file directly from disk (memory mapped), without
+     * loading its contents into a String first
+     */
+    public List<Token> scanFile(Path file) throws IOException {
+        Scanner scanner = Scanner.mapFile(file);
+        List<Token> tokens = scanner.scanTokens();
+        statistics = scanner.getStatistics();
+        return tokens;
+    }
+    
+    /**
+     * Lexical statistics of a source, without building Token objects
+     */
+    public LexerStatistics statistics(CharSequence source) {
+        Scanner scanner = new Scanner(source);
+        scanner.scanBuffer();
+        statistics = scanner.getStatistics();
+        return statistics;
+    }
+    
+    /**
+     * Statistics of the last source scanned with this instance, or null.
+     * After scanReusing() they belong to the pooled scanner and are
+     * overwritten by its next scan, like the returned token list.
+     */
+    public LexerStatistics getStatistics() {
+        return statistics;
     }
     
     /**
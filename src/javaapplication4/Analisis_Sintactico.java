@@ -4,6 +4,8 @@
  */
 package javaapplication4;
 
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -12,10 +14,16 @@ import java.util.List;
  * @author Gerardo
  */
 public class Analisis_Sintactico {
+    // One reusable parser per thread for batch analysis
+    private static final ThreadLocal<Parser> POOLED_PARSER =
+            ThreadLocal.withInitial(() -> new Parser(Collections.<Token>emptyList()));
+    
     private Parser parser;
+    private IncrementalParser incremental;
     private ASTNode ast;
     private List<SyntaxError> errors;
     private boolean success;
+    private Token errorLexico;
     
     public Analisis_Sintactico() {
         this.parser = null;
@@ -44,6 +52,194 @@ public class Analisis_Sintactico {
         return success;
     }
     
+    /**
+     * Perform syntactic analysis reporting each node to listener as it is
+     * recognized, without building the AST (getAST() returns null); see
+     * Parser.parse(ParseListener)
+     * @param tokens List of tokens from lexical analysis
+     * @param listener Receives the nodes in source order
+     * @return true if parsing succeeded with no errors, false otherwise
+     */
+    public boolean analizar(List<Token> tokens, ParseListener listener) {
+        if (!tokens.isEmpty() && tokens.get(tokens.size() - 1).getType() == TokenType.EOF) {
+            tokens = tokens.subList(0, tokens.size() - 1);
+        }
+        
+        parser = new Parser(tokens);
+        success = parser.parse(listener);
+        ast = null;
+        errors = parser.getErrors();
+        
+        return success;
+    }
+    
+    /**
+     * Perform syntactic analysis while the tokens are still being scanned
+     * @param tokens Token stream, e.g. Scanner.iterator(); ends at the EOF token
+     * @return true if parsing succeeded with no errors, false otherwise
+     */
+    public boolean analizar(Iterator<Token> tokens) {
+        parser = new Parser(tokens);
+        ast = parser.parse();
+        errors = parser.getErrors();
+        success = !parser.hasErrors();
+        
+        return success;
+    }
+    
+    /**
+     * Perform syntactic analysis on a compact token buffer
+     * @param tokens Tokens from Scanner.scanBuffer()
+     * @return true if parsing succeeded with no errors, false otherwise
+     */
+    public boolean analizar(TokenBuffer tokens) {
+        parser = new Parser(tokens);
+        ast = parser.parse();
+        errors = parser.getErrors();
+        success = !parser.hasErrors();
+        
+        return success;
+    }
+    
+    /**
+     * Perform syntactic analysis parsing the members of the structure in
+     * parallel, for large sources; the AST is the same as with analizar()
+     * and errors are sorted by position
+     * @param tokens List of tokens from lexical analysis
+     * @return true if parsing succeeded with no errors, false otherwise
+     */
+    public boolean analizarParalelo(List<Token> tokens) {
+        if (!tokens.isEmpty() && tokens.get(tokens.size() - 1).getType() == TokenType.EOF) {
+            tokens = tokens.subList(0, tokens.size() - 1);
+        }
+        
+        parser = new Parser(tokens);
+        ast = parser.parseParallel();
+        errors = parser.getErrors();
+        success = !parser.hasErrors();
+        
+        return success;
+    }
+    
+    /**
+     * Scans and parses a source at the same time, the scanner on a thread
+     * of its own feeding the parser through a bounded buffer (see
+     * TokenPipeline). The first lexical error stops both; the parse is then
+     * discarded and getErrorLexico() returns the error token.
+     * @param source Source code to check
+     * @return true if there were no lexical or syntax errors, false otherwise
+     */
+    public boolean analizarConcurrente(CharSequence source) {
+        try (TokenPipeline pipeline = new TokenPipeline(new Scanner(source)).start()) {
+            parser = new Parser(pipeline);
+            ast = parser.parse();
+            // The parse may stop before the end of the input; a lexical
+            // error after that point still makes the whole analysis fail
+            while (pipeline.hasNext()) {
+                pipeline.next();
+            }
+            errorLexico = pipeline.getLexicalError();
+        }
+        if (errorLexico != null) {
+            ast = null;
+            errors = Collections.emptyList();
+            success = false;
+        } else {
+            errors = parser.getErrors();
+            success = !parser.hasErrors();
+        }
+        
+        return success;
+    }
+    
+    /**
+     * First lexical error found by analizarConcurrente(), or null
+     */
+    public Token getErrorLexico() {
+        return errorLexico;
+    }
+    
+    /**
+     * Scans and parses a source with the scanner and parser kept for the
+     * calling thread, for validating many sources without reallocating.
+     * The AST and error list stay valid until the next call to validar()
+     * on the same thread.
+     * @param source Source code to check
+     * @return true if parsing succeeded with no errors, false otherwise
+     */
+    public boolean validar(CharSequence source) {
+        parser = pooledParser(source);
+        ast = parser.parse();
+        errors = parser.getErrors();
+        success = !parser.hasErrors();
+        
+        return success;
+    }
+    
+    /**
+     * Same as validar(), but only checks the syntax: the errors are the
+     * same, no AST is built (getAST() returns null) and nothing is
+     * allocated for it, for checks that only need to know whether a
+     * source is valid and where its errors are
+     * @param source Source code to check
+     * @return true if parsing succeeded with no errors, false otherwise
+     */
+    public boolean verificar(CharSequence source) {
+        parser = pooledParser(source);
+        success = parser.recognize();
+        ast = null;
+        errors = parser.getErrors();
+        
+        return success;
+    }
+    
+    private static Parser pooledParser(CharSequence source) {
+        List<Token> tokens = Analisis_Lexico.scanPooled(source);
+        // The EOF token is left out, as in analizar(List), unless it is the
+        // only token: the parser needs one to report the missing structure
+        if (tokens.size() > 1) {
+            tokens = tokens.subList(0, tokens.size() - 1);
+        }
+        return POOLED_PARSER.get().reset(tokens);
+    }
+    
+    /**
+     * Starts incremental analysis of a source that is going to be edited,
+     * for example the text of an editor; see editar()
+     * @param source Source code to check
+     * @return true if parsing succeeded with no errors, false otherwise
+     */
+    public boolean analizarIncremental(String source) {
+        incremental = new IncrementalParser(source);
+        return actualizarIncremental();
+    }
+    
+    /**
+     * Applies an edit to the source given to analizarIncremental() and
+     * reparses only the block or function that contains it. Nodes outside
+     * that block keep their identity.
+     * @param offset position of the edit in the current source
+     * @param removedLength number of characters removed at offset
+     * @param insertedText text inserted at offset
+     * @return true if parsing succeeded with no errors, false otherwise
+     */
+    public boolean editar(int offset, int removedLength, String insertedText) {
+        if (incremental == null) {
+            throw new IllegalStateException("analizarIncremental() debe llamarse antes de editar()");
+        }
+        incremental.edit(offset, removedLength, insertedText);
+        return actualizarIncremental();
+    }
+    
+    private boolean actualizarIncremental() {
+        parser = null;
+        ast = incremental.getAST();
+        errors = incremental.getErrors();
+        success = !incremental.hasErrors();
+        
+        return success;
+    }
+    
     /**
      * Get the Abstract Syntax Tree
      * @return AST root node, or null if parsing failed
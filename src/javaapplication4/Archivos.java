@@ -27,7 +27,7 @@ public class Archivos
  * @author David de la Luz
  */
 
-    public static void guardarArchivo(String texto) {
+    public static void guardarArchivo(CharSequence texto) {
         FileWriter fichero = null;
         PrintWriter pw = null;
 
@@ -40,7 +40,8 @@ public class Archivos
 
             fichero = new FileWriter(new File(folder, "archivo.txt"));
             pw = new PrintWriter(fichero);
-            pw.println(texto);
+            pw.append(texto);
+            pw.println();
 
         } catch (IOException ex) {
             Logger.getLogger(Archivos.class.getName()).log(Level.SEVERE, null, ex);
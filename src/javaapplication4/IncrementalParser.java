@@ -0,0 +1,269 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package javaapplication4;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the tokens, AST and syntax errors of a source up to date while it
+ * is being edited. After an edit the Scanner re-lexes only the affected
+ * lines; the parser then reparses only the smallest block (STATEMENT_LIST)
+ * or function that contains every re-lexed token, and splices the new
+ * subtree into the old tree. Every other node is kept as it was: nodes
+ * after the edit take their line and column from their tokens, which the
+ * Scanner has already moved. When no block fits, for example because the
+ * edit unbalanced the parentheses, the whole token list is parsed again.
+ * @author Gerardo
+ */
+public class IncrementalParser {
+
+    private final Scanner scanner;
+    private final Parser parser;
+    private List<Token> tokens;         // scanner tokens, EOF included
+    private ASTNode ast;
+    private final List<SyntaxError> errors;
+    private ASTNode lastReparsed;
+    private boolean aborted;            // the last full parse reached the error limit
+
+    public IncrementalParser(String source) {
+        this.scanner = new Scanner(source);
+        this.tokens = scanner.scanTokens();
+        this.parser = new Parser(parserTokens());
+        this.errors = new ArrayList<>();
+        parseAll();
+    }
+
+    /**
+     * Applies an edit to the source and updates the tokens, AST and errors
+     * @param offset position of the edit in the current source
+     * @param removedLength number of characters removed at offset
+     * @param insertedText text inserted at offset
+     * @return the updated AST
+     */
+    public ASTNode edit(int offset, int removedLength, String insertedText) {
+        tokens = scanner.applyEdit(offset, removedLength, insertedText);
+        if (ast == null || aborted || !reparse(scanner.getRelexStart(), scanner.getRelexEnd())) {
+            parseAll();
+        }
+        return ast;
+    }
+
+    public ASTNode getAST() {
+        return ast;
+    }
+
+    public List<SyntaxError> getErrors() {
+        return errors;
+    }
+
+    public boolean hasErrors() {
+        return !errors.isEmpty();
+    }
+
+    public List<Token> getTokens() {
+        return tokens;
+    }
+
+    /**
+     * Node built by the last parse: the reparsed block or function, or the
+     * root after a full parse
+     */
+    public ASTNode getLastReparsed() {
+        return lastReparsed;
+    }
+
+    private void parseAll() {
+        parser.reset(parserTokens());
+        ast = parser.parse();
+        errors.clear();
+        errors.addAll(parser.getErrors());
+        lastReparsed = ast;
+        aborted = parser.isAborted();
+    }
+
+    /**
+     * Tokens for the parser: without the EOF token, as in
+     * Analisis_Sintactico.analizar(List), unless it is the only one
+     */
+    private List<Token> parserTokens() {
+        if (tokens.size() > 1 && tokens.get(tokens.size() - 1).getType() == TokenType.EOF) {
+            return tokens.subList(0, tokens.size() - 1);
+        }
+        return tokens;
+    }
+
+    /**
+     * Reparses the innermost block or function around the re-lexed range
+     * [start, end) that still parses to the same closing token
+     * @return false if no block or function could be reparsed on its own
+     */
+    private boolean reparse(int start, int end) {
+        if (ast.getChildCount() == 0 || ast.getChild(0).getType() != ASTNode.NodeType.STRUCTURE) {
+            return false;
+        }
+
+        // Nodes from the structure down to the innermost one containing the range
+        List<ASTNode> path = new ArrayList<>();
+        List<Integer> childIndexes = new ArrayList<>();
+        ASTNode node = ast.getChild(0);
+        path.add(node);
+        childIndexes.add(0);
+        while (true) {
+            int child = enclosingChild(node, start, end);
+            if (child < 0) break;
+            node = node.getChild(child);
+            path.add(node);
+            childIndexes.add(child);
+        }
+
+        for (int i = path.size() - 1; i > 0; i--) {
+            ASTNode candidate = path.get(i);
+            ASTNode parent = path.get(i - 1);
+            ASTNode fresh = reparse(candidate, parent);
+            if (fresh == null) continue;
+
+            parent.setChild(childIndexes.get(i), fresh);
+            int errorDelta = fresh.getErrorCount() - candidate.getErrorCount();
+            for (int k = 1; k < i; k++) {
+                ASTNode ancestor = path.get(k);
+                if (ancestor.getType() == ASTNode.NodeType.STATEMENT_LIST
+                        || ancestor.getType() == ASTNode.NodeType.FUNCTION) {
+                    ancestor.setErrorCount(ancestor.getErrorCount() + errorDelta);
+                }
+            }
+            lastReparsed = fresh;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reparses a block (a STATEMENT_LIST with its parentheses as range) or a
+     * FUNCTION member, and replaces its syntax errors in the error list
+     * @return the new node, or null if it cannot be reparsed on its own
+     */
+    private ASTNode reparse(ASTNode candidate, ASTNode parent) {
+        boolean block = candidate.getType() == ASTNode.NodeType.STATEMENT_LIST;
+        if (!block && candidate.getType() != ASTNode.NodeType.FUNCTION) {
+            return null;
+        }
+        Token first = candidate.getFirstToken();
+        Token last = candidate.getLastToken();
+        int firstIndex = indexOf(first);
+        int lastIndex = indexOf(last);
+        List<Token> parsed = parserTokens();
+        if (firstIndex < 0 || lastIndex < 0 || lastIndex >= parsed.size() - 1) {
+            // Errors reported past the end of input are reported at the last
+            // token, and could not be told apart from those of the candidate
+            return null;
+        }
+
+        parser.reset(parsed);
+        ASTNode fresh;
+        if (!block) {
+            // A function that does not end with the ")" of its body leaves the
+            // parser recovering from an error, which affects the next member
+            fresh = parser.parseMemberAt(firstIndex);
+            if (fresh == null || fresh.getType() != ASTNode.NodeType.FUNCTION
+                    || parser.getPosition() != lastIndex + 1
+                    || !endsWithBody(candidate) || !endsWithBody(fresh)) {
+                return null;
+            }
+        } else {
+            fresh = parent.getType() == ASTNode.NodeType.STRUCTURE
+                    ? parser.parseMemberListAt(firstIndex)
+                    : parser.parseStatementListAt(firstIndex);
+            if (parser.getPosition() != lastIndex) {
+                return null;
+            }
+            fresh.setRange(first, last);
+        }
+
+        // The candidate's errors are the last ones reported up to its last
+        // token; errors after it are reported at later tokens
+        int after = 0;
+        while (after < errors.size() && !isAfter(errors.get(after), last)) after++;
+        int from = after - candidate.getErrorCount();
+        if (from < 0 || parser.isAborted()
+                || errors.size() - candidate.getErrorCount() + parser.getErrors().size() > parser.getMaxErrors()) {
+            return null;
+        }
+        errors.subList(from, after).clear();
+        errors.addAll(from, parser.getErrors());
+        for (int i = from + parser.getErrors().size(); i < errors.size(); i++) {
+            errors.set(i, errors.get(i).moved());
+        }
+        return fresh;
+    }
+
+    private static boolean endsWithBody(ASTNode function) {
+        ASTNode body = function.getChild(function.getChildCount() - 1);
+        return body.getLastToken() != null && body.getLastToken() == function.getLastToken();
+    }
+
+    private static boolean isAfter(SyntaxError error, Token token) {
+        return error.getToken() != null && error.getToken().getOffset() > token.getOffset();
+    }
+
+    /**
+     * Index of the child that contains the whole range [start, end) and whose
+     * first and last tokens were kept by the Scanner, or -1
+     */
+    private int enclosingChild(ASTNode node, int start, int end) {
+        List<ASTNode> children = node.getChildren();
+        if (node.getType() == ASTNode.NodeType.STATEMENT_LIST) {
+            // Statements are in source order: only the last one starting before the range can contain it
+            int low = 0;
+            int high = children.size() - 1;
+            int found = -1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int offset = children.get(mid).getStartOffset();
+                if (offset >= 0 && offset < start) {
+                    found = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return found >= 0 && encloses(children.get(found), start, end) ? found : -1;
+        }
+        for (int i = 0; i < children.size(); i++) {
+            if (encloses(children.get(i), start, end)) return i;
+        }
+        return -1;
+    }
+
+    private boolean encloses(ASTNode node, int start, int end) {
+        Token first = node.getFirstToken();
+        Token last = node.getLastToken();
+        return first != null && last != null
+                && first.getOffset() < start
+                && last.getOffset() >= end
+                && indexOf(last) >= 0;
+    }
+
+    /**
+     * Index of a token in the current token list, or -1 if the edit removed it
+     */
+    private int indexOf(Token token) {
+        int offset = token.getOffset();
+        int low = 0;
+        int high = tokens.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midOffset = tokens.get(mid).getOffset();
+            if (midOffset < offset) {
+                low = mid + 1;
+            } else if (midOffset > offset) {
+                high = mid - 1;
+            } else {
+                return tokens.get(mid) == token ? mid : -1;
+            }
+        }
+        return -1;
+    }
+}
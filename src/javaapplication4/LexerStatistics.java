@@ -0,0 +1,209 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package javaapplication4;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Lexical statistics of a source, counted by the Scanner while it scans:
+ * tokens per type, identifier lengths, comment and whitespace characters,
+ * keyword frequencies and lexical errors per line. Counters are plain int
+ * arrays indexed by TokenType ordinal or keyword index; EOF tokens are not
+ * counted.
+ * @author Gerardo
+ */
+public final class LexerStatistics {
+
+    /** Identifiers of this length or longer share the last histogram bucket */
+    public static final int MAX_IDENTIFIER_LENGTH = 64;
+
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final LineMap lineMap;
+    private final int[] typeCounts;
+    private final int[] identifierLengths;
+    private final int[] keywordCounts;
+    private int[] errorOffsets;
+    private int errorCount;
+    private long commentChars;
+    private long whitespaceChars;
+    private long characters;
+
+    LexerStatistics(LineMap lineMap) {
+        this.lineMap = lineMap;
+        this.typeCounts = new int[TYPES.length];
+        this.identifierLengths = new int[MAX_IDENTIFIER_LENGTH + 1];
+        this.keywordCounts = new int[LexerTables.keywordText.length];
+        this.errorOffsets = new int[16];
+        this.errorCount = 0;
+    }
+
+    void clear() {
+        Arrays.fill(typeCounts, 0);
+        Arrays.fill(identifierLengths, 0);
+        Arrays.fill(keywordCounts, 0);
+        errorCount = 0;
+        commentChars = 0;
+        whitespaceChars = 0;
+        characters = 0;
+    }
+
+    void token(TokenType type) {
+        typeCounts[type.ordinal()]++;
+    }
+
+    void identifier(int length) {
+        identifierLengths[Math.min(length, MAX_IDENTIFIER_LENGTH)]++;
+    }
+
+    void keyword(int index) {
+        keywordCounts[index]++;
+    }
+
+    void comment(int length) {
+        commentChars += length;
+    }
+
+    void whitespace(int length) {
+        whitespaceChars += length;
+    }
+
+    void error(int offset) {
+        if (errorCount == errorOffsets.length) {
+            errorOffsets = Arrays.copyOf(errorOffsets, errorCount * 2);
+        }
+        errorOffsets[errorCount++] = offset;
+    }
+
+    void setCharacters(long characters) {
+        this.characters = characters;
+    }
+
+    /**
+     * Adds the counts of a statistics object that covers a later part of
+     * the same source (a chunk of a parallel scan)
+     */
+    void add(LexerStatistics other) {
+        for (int i = 0; i < typeCounts.length; i++) typeCounts[i] += other.typeCounts[i];
+        for (int i = 0; i < identifierLengths.length; i++) identifierLengths[i] += other.identifierLengths[i];
+        for (int i = 0; i < keywordCounts.length; i++) keywordCounts[i] += other.keywordCounts[i];
+        for (int i = 0; i < other.errorCount; i++) error(other.errorOffsets[i]);
+        commentChars += other.commentChars;
+        whitespaceChars += other.whitespaceChars;
+    }
+
+    public int getCount(TokenType type) {
+        return typeCounts[type.ordinal()];
+    }
+
+    /**
+     * Number of tokens of each type that appeared at least once
+     */
+    public Map<TokenType, Integer> getCounts() {
+        Map<TokenType, Integer> counts = new EnumMap<>(TokenType.class);
+        for (int i = 0; i < typeCounts.length; i++) {
+            if (typeCounts[i] > 0) counts.put(TYPES[i], typeCounts[i]);
+        }
+        return counts;
+    }
+
+    public int getTokenCount() {
+        int total = 0;
+        for (int count : typeCounts) total += count;
+        return total;
+    }
+
+    /**
+     * Histogram of identifier lengths (keywords excluded): element i is the
+     * number of identifiers of length i, the last element counts every
+     * identifier of MAX_IDENTIFIER_LENGTH chars or more
+     */
+    public int[] getIdentifierLengths() {
+        return identifierLengths.clone();
+    }
+
+    public double getAverageIdentifierLength() {
+        long total = 0;
+        long count = 0;
+        for (int length = 0; length < identifierLengths.length; length++) {
+            total += (long) length * identifierLengths[length];
+            count += identifierLengths[length];
+        }
+        return count == 0 ? 0.0 : (double) total / count;
+    }
+
+    public int getKeywordCount(String keyword) {
+        for (int i = 0; i < LexerTables.keywordText.length; i++) {
+            if (LexerTables.keywordText[i].equals(keyword)) return keywordCounts[i];
+        }
+        return 0;
+    }
+
+    /**
+     * Keywords that appeared at least once, most frequent first
+     */
+    public Map<String, Integer> getKeywordFrequencies() {
+        Integer[] order = new Integer[keywordCounts.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> keywordCounts[b] - keywordCounts[a]);
+        Map<String, Integer> frequencies = new LinkedHashMap<>();
+        for (int i : order) {
+            if (keywordCounts[i] == 0) break;
+            frequencies.put(LexerTables.keywordText[i], keywordCounts[i]);
+        }
+        return frequencies;
+    }
+
+    public long getCommentChars() {
+        return commentChars;
+    }
+
+    public long getWhitespaceChars() {
+        return whitespaceChars;
+    }
+
+    /**
+     * Characters scanned so far (the whole source once the scan is done)
+     */
+    public long getCharacters() {
+        return characters;
+    }
+
+    public double getCommentRatio() {
+        return characters == 0 ? 0.0 : (double) commentChars / characters;
+    }
+
+    public double getWhitespaceRatio() {
+        return characters == 0 ? 0.0 : (double) whitespaceChars / characters;
+    }
+
+    public int getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * Lexical errors per line: element i counts the errors that start on
+     * line i + 1
+     */
+    public int[] getErrorsPerLine() {
+        int[] perLine = new int[lineMap.getLineCount()];
+        for (int i = 0; i < errorCount; i++) {
+            perLine[lineMap.getLine(errorOffsets[i]) - 1]++;
+        }
+        return perLine;
+    }
+
+    @Override
+    public String toString() {
+        return "LexerStatistics{tokens=" + getTokenCount()
+                + ", errors=" + errorCount
+                + ", characters=" + characters
+                + ", comments=" + commentChars
+                + ", whitespace=" + whitespaceChars + '}';
+    }
+}
@@ -0,0 +1,376 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package javaapplication4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntPredicate;
+
+/**
+ * Token specification of the language and the lexer tables generated from it.
+ *
+ * The spec in the static block below is the single place where tokens are
+ * declared. From it a DFA is built over the Latin-1 range and compressed into:
+ * - a character-class table (chars that behave the same share a class),
+ * - a state transition table indexed by state and character class,
+ * - an accept table giving the action (and TokenType) of each state.
+ * Strings and nested comments are not regular, so their accepting states
+ * hand over to the procedural code in Scanner.
+ * @author Gerardo
+ */
+final class LexerTables {
+
+    // Actions of accepting states
+    static final byte NONE = 0;
+    static final byte TOKEN = 1;           // emit tokenType[state]
+    static final byte IDENTIFIER = 2;      // identifier or keyword, delimiter check
+    static final byte SKIP = 3;            // whitespace
+    static final byte NEWLINE = 4;
+    static final byte LINE_COMMENT = 5;
+    static final byte BLOCK_COMMENT = 6;
+    static final byte STRING = 7;          // after the opening "
+    static final byte CHAR_STRING = 8;     // after the opening '
+    static final byte ERROR = 9;           // emit errorMessage[state]
+    static final byte NUMBER = 10;         // numeric literal, value decoded by Scanner
+
+    static final int DEAD = 0;
+    static final int START = 1;
+
+    static final byte[] charClass = new byte[256];
+    static final int classCount;
+    static final int otherClass;           // every char above Latin-1
+    static final boolean[] delimiterClass;
+    static final int[] transitions;        // [state * classCount + class]
+    static final byte[] action;
+    static final TokenType[] tokenType;
+    static final String[] errorMessage;
+    static final String[] spelling;        // shared lexeme of fixed-spelling tokens
+    static final byte[] operator;          // Operator id of operator tokens, NONE otherwise
+
+    // Keywords are recognized after the DFA accepts an identifier
+    static final int MAX_KEYWORD_LENGTH;
+    static final String[] keywordText;
+    static final TokenType[] keywordType;
+    static final int[][] keywordBuckets;   // [length * 26 + first letter]
+
+    static {
+        Spec spec = new Spec();
+
+        // Operators
+        spec.literal("=", TokenType.OPERADOR_ASIGNACION);
+        spec.operator("+", TokenType.OPERADOR_ARITMETICO, Operator.ADD);
+        spec.operator("-", TokenType.OPERADOR_ARITMETICO, Operator.SUBTRACT);
+        spec.operator("*", TokenType.OPERADOR_ARITMETICO, Operator.MULTIPLY);
+        spec.operator("/", TokenType.OPERADOR_ARITMETICO, Operator.DIVIDE);
+        spec.operator("==", TokenType.OPERADOR_COMPARACION, Operator.EQUAL);
+        spec.operator("!=", TokenType.OPERADOR_COMPARACION, Operator.NOT_EQUAL);
+        spec.operator("<", TokenType.OPERADOR_COMPARACION, Operator.LESS);
+        spec.operator(">", TokenType.OPERADOR_COMPARACION, Operator.GREATER);
+        spec.operator("<=", TokenType.OPERADOR_COMPARACION, Operator.LESS_EQUAL);
+        spec.operator(">=", TokenType.OPERADOR_COMPARACION, Operator.GREATER_EQUAL);
+        spec.operator("&&", TokenType.OPERADOR_LOGICO, Operator.AND);
+        spec.operator("||", TokenType.OPERADOR_LOGICO, Operator.OR);
+        spec.operator("!", TokenType.OPERADOR_LOGICO, Operator.NOT);
+        spec.error("&", "Unexpected character '&'");
+        spec.error("|", "Unexpected character '|'");
+
+        // Delimiters
+        spec.literal("(", TokenType.APERTURA);
+        spec.literal(")", TokenType.CIERRE);
+        spec.literal("[", TokenType.AGRUPADOR);
+        spec.literal("]", TokenType.AGRUPADOR);
+        spec.literal(";", TokenType.PUNTO_Y_COMA);
+        spec.literal(",", TokenType.COMA);
+
+        // Comments and string literals
+        spec.action("//", LINE_COMMENT);
+        spec.action("/*", BLOCK_COMMENT);
+        spec.action("\"", STRING);
+        spec.action("'", CHAR_STRING);
+
+        // Whitespace
+        int blank = spec.state(SKIP, null, null);
+        spec.on(START, anyOf(" \t\r"), blank);
+        spec.on(blank, anyOf(" \t\r"), blank);
+        spec.action("\n", NEWLINE);
+
+        // Identifiers: letter (letter | digit)*
+        int identifier = spec.state(IDENTIFIER, TokenType.IDENTIFICADOR, null);
+        spec.on(START, LexerTables::isAlpha, identifier);
+        spec.on(identifier, c -> isAlpha(c) || isDigit(c), identifier);
+
+        // Numbers: digit+ ("." digit+)? ([eE] [+-]? digit+)?
+        int integer = spec.state(NUMBER, TokenType.ENTERO, null);
+        int point = spec.state(NONE, null, null);
+        int fraction = spec.state(NUMBER, TokenType.DECIMAL, null);
+        int exponentMark = spec.state(NONE, null, null);
+        int exponentSign = spec.state(NONE, null, null);
+        int exponent = spec.state(NUMBER, TokenType.DECIMAL, null);
+        spec.on(START, LexerTables::isDigit, integer);
+        spec.on(integer, LexerTables::isDigit, integer);
+        spec.on(integer, anyOf("."), point);
+        spec.on(point, LexerTables::isDigit, fraction);
+        spec.on(fraction, LexerTables::isDigit, fraction);
+        spec.on(integer, anyOf("eE"), exponentMark);
+        spec.on(fraction, anyOf("eE"), exponentMark);
+        spec.on(exponentMark, anyOf("+-"), exponentSign);
+        spec.on(exponentMark, LexerTables::isDigit, exponent);
+        spec.on(exponentSign, LexerTables::isDigit, exponent);
+        spec.on(exponent, LexerTables::isDigit, exponent);
+
+        // Characters that may follow an identifier ('\0' stands for end of input)
+        spec.delimiters("\0 \t\n\r=+-*/()[]{};,<>!&|\"'");
+
+        // Reserved words (English)
+        spec.keyword("structure", TokenType.PALABRA_RESERVADA);
+        spec.keyword("public", TokenType.PALABRA_RESERVADA);
+        spec.keyword("const", TokenType.PALABRA_RESERVADA);
+        spec.keyword("void", TokenType.PALABRA_RESERVADA);
+        spec.keyword("main", TokenType.PALABRA_RESERVADA);
+
+        // Functions (English)
+        spec.keyword("print", TokenType.FUNCION_SALIDA);
+        spec.keyword("input", TokenType.FUNCION_ENTRADA);
+
+        // Data types (English)
+        spec.keyword("number", TokenType.TIPO_DATO);
+
+        // Control flow - Conditionals
+        spec.keyword("if", TokenType.CONDICIONAL);
+        spec.keyword("else", TokenType.CONDICIONAL);
+        spec.keyword("elseif", TokenType.CONDICIONAL);
+
+        // Control flow - Loops
+        spec.keyword("while", TokenType.BUCLE);
+        spec.keyword("for", TokenType.BUCLE);
+
+        // Control flow - Jump statements
+        spec.keyword("break", TokenType.SALTO);
+        spec.keyword("continue", TokenType.SALTO);
+        spec.keyword("return", TokenType.SALTO);
+
+        // Boolean literals
+        spec.keyword("true", TokenType.BOOLEANO);
+        spec.keyword("false", TokenType.BOOLEANO);
+
+        // Specific Data Types
+        spec.keyword("int", TokenType.TIPO_ENTERO);
+        spec.keyword("float", TokenType.TIPO_FLOTANTE);
+        spec.keyword("double", TokenType.TIPO_FLOTANTE);
+        spec.keyword("string", TokenType.TIPO_CADENA_TIPO);
+        spec.keyword("char", TokenType.TIPO_CARACTER);
+        spec.keyword("bool", TokenType.TIPO_BOOLEANO);
+        spec.keyword("array", TokenType.TIPO_ARREGLO);
+
+        // Exception Handling
+        spec.keyword("try", TokenType.EXCEPCION);
+        spec.keyword("catch", TokenType.EXCEPCION);
+        spec.keyword("throw", TokenType.EXCEPCION);
+        spec.keyword("finally", TokenType.EXCEPCION);
+
+        // ---- Generate the tables ----
+        int states = spec.rows.size();
+        action = new byte[states];
+        tokenType = new TokenType[states];
+        errorMessage = new String[states];
+        spelling = new String[states];
+        operator = new byte[states];
+        for (int s = 0; s < states; s++) {
+            action[s] = spec.actions.get(s);
+            tokenType[s] = spec.types.get(s);
+            errorMessage[s] = spec.messages.get(s);
+            spelling[s] = spec.spellings.get(s);
+            operator[s] = spec.operators.get(s);
+        }
+
+        // Chars with identical transition columns (and delimiter flag) share a class
+        Map<String, Integer> classes = new HashMap<>();
+        List<Boolean> delimiters = new ArrayList<>();
+        for (int c = 0; c < 256; c++) {
+            charClass[c] = (byte) classFor(spec, c, classes, delimiters);
+        }
+        otherClass = classFor(spec, -1, classes, delimiters);
+        classCount = classes.size();
+
+        delimiterClass = new boolean[classCount];
+        for (int k = 0; k < classCount; k++) {
+            delimiterClass[k] = delimiters.get(k);
+        }
+
+        transitions = new int[states * classCount];
+        for (int s = 0; s < states; s++) {
+            for (int c = 0; c < 256; c++) {
+                transitions[s * classCount + charClass[c]] = spec.rows.get(s)[c];
+            }
+        }
+
+        // Keyword recognizer: candidates bucketed by length and first letter
+        keywordText = spec.keywords.keySet().toArray(new String[0]);
+        keywordType = spec.keywords.values().toArray(new TokenType[0]);
+        int longest = 0;
+        for (String word : keywordText) {
+            longest = Math.max(longest, word.length());
+        }
+        MAX_KEYWORD_LENGTH = longest;
+        keywordBuckets = new int[(longest + 1) * 26][];
+        for (int k = 0; k < keywordText.length; k++) {
+            String word = keywordText[k];
+            int bucket = word.length() * 26 + (word.charAt(0) - 'a');
+            int[] candidates = keywordBuckets[bucket];
+            if (candidates == null) {
+                candidates = new int[] { k };
+            } else {
+                candidates = Arrays.copyOf(candidates, candidates.length + 1);
+                candidates[candidates.length - 1] = k;
+            }
+            keywordBuckets[bucket] = candidates;
+        }
+    }
+
+    private LexerTables() {
+    }
+
+    static int classOf(char c) {
+        return c < 256 ? charClass[c] : otherClass;
+    }
+
+    static boolean isDelimiter(char c) {
+        return delimiterClass[classOf(c)];
+    }
+
+    static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+
+    static boolean isAlpha(int c) {
+        return (c >= 'a' && c <= 'z') ||
+               (c >= 'A' && c <= 'Z') ||
+               c == '_' ||
+               (c >= 'á' && c <= 'ú') ||
+               (c >= 'Á' && c <= 'Ú') ||
+               c == 'ñ' || c == 'Ñ';
+    }
+
+    private static IntPredicate anyOf(String chars) {
+        return c -> chars.indexOf(c) >= 0;
+    }
+
+    /**
+     * Class id for a Latin-1 char, or for "any other char" when c is -1
+     */
+    private static int classFor(Spec spec, int c, Map<String, Integer> classes, List<Boolean> delimiters) {
+        boolean delimiter = c >= 0 && spec.delimiters[c];
+        StringBuilder key = new StringBuilder(delimiter ? "D" : "-");
+        for (int[] row : spec.rows) {
+            key.append(c >= 0 ? row[c] : DEAD).append(',');
+        }
+        Integer id = classes.get(key.toString());
+        if (id == null) {
+            id = classes.size();
+            classes.put(key.toString(), id);
+            delimiters.add(delimiter);
+        }
+        return id;
+    }
+
+    /**
+     * Builder for the token specification: a DFA over Latin-1 chars
+     */
+    private static final class Spec {
+        final List<int[]> rows = new ArrayList<>();
+        final List<Byte> actions = new ArrayList<>();
+        final List<TokenType> types = new ArrayList<>();
+        final List<String> messages = new ArrayList<>();
+        final List<String> spellings = new ArrayList<>();
+        final List<Byte> operators = new ArrayList<>();
+        final boolean[] delimiters = new boolean[256];
+        final Map<String, TokenType> keywords = new TreeMap<>();
+
+        Spec() {
+            state(NONE, null, null);   // DEAD
+            state(NONE, null, null);   // START
+        }
+
+        int state(byte stateAction, TokenType type, String message) {
+            rows.add(new int[256]);
+            actions.add(stateAction);
+            types.add(type);
+            messages.add(message);
+            spellings.add(null);
+            operators.add((byte) Operator.NONE);
+            return rows.size() - 1;
+        }
+
+        void on(int from, IntPredicate chars, int to) {
+            int[] row = rows.get(from);
+            for (int c = 0; c < 256; c++) {
+                if (chars.test(c)) {
+                    if (row[c] != DEAD && row[c] != to) {
+                        throw new IllegalStateException("Conflicting rules for '" + (char) c + "'");
+                    }
+                    row[c] = to;
+                }
+            }
+        }
+
+        void literal(String text, TokenType type) {
+            int state = path(text);
+            accept(state, TOKEN, type, null);
+            spellings.set(state, text);
+        }
+
+        void operator(String text, TokenType type, int id) {
+            literal(text, type);
+            operators.set(path(text), (byte) id);
+        }
+
+        void error(String text, String message) {
+            accept(path(text), ERROR, null, message);
+        }
+
+        void action(String text, byte stateAction) {
+            accept(path(text), stateAction, null, null);
+        }
+
+        void delimiters(String chars) {
+            for (char c : chars.toCharArray()) {
+                delimiters[c] = true;
+            }
+        }
+
+        void keyword(String word, TokenType type) {
+            keywords.put(word, type);
+        }
+
+        /**
+         * State reached by the chars of text, creating states as needed
+         */
+        private int path(String text) {
+            int state = START;
+            for (char c : text.toCharArray()) {
+                int next = rows.get(state)[c];
+                if (next == DEAD) {
+                    next = state(NONE, null, null);
+                    rows.get(state)[c] = next;
+                }
+                state = next;
+            }
+            return state;
+        }
+
+        private void accept(int state, byte stateAction, TokenType type, String message) {
+            if (actions.get(state) != NONE) {
+                throw new IllegalStateException("Token declared twice");
+            }
+            actions.set(state, stateAction);
+            types.set(state, type);
+            messages.set(state, message);
+        }
+    }
+}
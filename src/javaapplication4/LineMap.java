@@ -0,0 +1,152 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package javaapplication4;
+
+import java.util.Arrays;
+import javax.swing.text.Segment;
+
+/**
+ * Offsets of the line starts of a text. Converts a source offset to its
+ * line and column (both starting at 1) with a binary search, so tokens
+ * only need to remember their offset and the scanner does not have to
+ * count lines and columns character by character. Every line start is
+ * kept, so a map built while streaming grows with the number of lines
+ * read, even though the scanner itself only buffers the current token.
+ * @author Gerardo
+ */
+public final class LineMap {
+
+    private int[] starts;   // starts[i] is the offset of line i + 1
+    private int count;
+
+    /**
+     * Map with a single line starting at offset 0; more lines are added
+     * as the text is read
+     */
+    public LineMap() {
+        this.starts = new int[64];
+        this.count = 1;
+    }
+
+    public static LineMap of(CharSequence text) {
+        LineMap map = new LineMap();
+        map.addLines(text);
+        return map;
+    }
+
+    /**
+     * Rebuilds the map for another text, keeping the allocated array
+     */
+    void reset(CharSequence text) {
+        count = 1;
+        addLines(text);
+    }
+
+    private void addLines(CharSequence text) {
+        if (text instanceof String) {
+            String string = (String) text;
+            int newline = string.indexOf('\n');
+            while (newline >= 0) {
+                add(newline + 1);
+                newline = string.indexOf('\n', newline + 1);
+            }
+        } else if (text instanceof Segment) {
+            Segment segment = (Segment) text;
+            scan(segment.array, segment.offset, segment.offset + segment.count, 0);
+        } else {
+            for (int i = 0; i < text.length(); i++) {
+                if (text.charAt(i) == '\n') add(i + 1);
+            }
+        }
+    }
+
+    /**
+     * Adds the line starts found in chars[from, to), whose first char is
+     * at the given offset of the text. Chunks must be added in order.
+     */
+    void scan(char[] chars, int from, int to, int offset) {
+        int base = offset - from + 1;
+        for (int i = from; i < to; i++) {
+            if (chars[i] == '\n') add(base + i);
+        }
+    }
+
+    private void add(int start) {
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+        }
+        starts[count++] = start;
+    }
+
+    public int getLineCount() {
+        return count;
+    }
+
+    /**
+     * Line of the character at offset
+     */
+    public int getLine(int offset) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] <= offset) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return Math.max(high, 0) + 1;
+    }
+
+    /**
+     * Column of the character at offset
+     */
+    public int getColumn(int offset) {
+        return offset - starts[getLine(offset) - 1] + 1;
+    }
+
+    /**
+     * Offset of the first character of a line
+     */
+    public int getLineStart(int line) {
+        if (line < 1 || line > count) {
+            throw new IndexOutOfBoundsException("Line " + line + " of " + count);
+        }
+        return starts[line - 1];
+    }
+
+    /**
+     * Offset of the character at a line and column
+     */
+    public int getOffset(int line, int column) {
+        return getLineStart(line) + column - 1;
+    }
+
+    /**
+     * Updates the map after removedLength characters at offset were
+     * replaced by insertedText
+     */
+    void edit(int offset, int removedLength, CharSequence insertedText) {
+        // Lines starting right after a removed newline disappear
+        int from = getLine(offset);
+        int to = getLine(offset + removedLength);
+        LineMap inserted = of(insertedText);
+        int added = inserted.count - 1;
+        int delta = insertedText.length() - removedLength;
+        int tail = count - to;
+
+        int[] updated = new int[Math.max(from + added + tail, 64)];
+        System.arraycopy(starts, 0, updated, 0, from);
+        for (int i = 0; i < added; i++) {
+            updated[from + i] = inserted.starts[i + 1] + offset;
+        }
+        for (int i = 0; i < tail; i++) {
+            updated[from + added + i] = starts[to + i] + delta;
+        }
+        starts = updated;
+        count = from + added + tail;
+    }
+}
@@ -62,14 +62,8 @@ public class LineNumberPanel extends JPanel implements DocumentListener, CaretLi
     }
     
     private int getLineCount() {
-        String text = textArea.getText();
-        if (text.isEmpty()) return 1;
-        
-        int lines = 1;
-        for (char c : text.toCharArray()) {
-            if (c == '\n') lines++;
-        }
-        return lines;
+        // The document already keeps one element per line; no need to copy the text
+        return Math.max(textArea.getLineCount(), 1);
     }
     
     @Override
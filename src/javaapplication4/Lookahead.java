@@ -0,0 +1,91 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package javaapplication4;
+
+import java.util.Arrays;
+
+/**
+ * Token kinds for the parser's lookahead tables: the token classes that
+ * decide which production to use (each statement keyword, data types,
+ * identifiers, "="...). Most kinds follow from the TokenType alone; for
+ * the keyword types that group several words the spelling is compared
+ * once, here, instead of once per alternative tried by the parser.
+ * @author Gerardo
+ */
+final class Lookahead {
+
+    static final int END = 0;           // no token
+    static final int OTHER = 1;
+    static final int TYPE = 2;          // data types and "void"
+    static final int IDENTIFIER = 3;
+    static final int ASSIGN = 4;
+    static final int TRY = 5;
+    static final int THROW = 6;
+    static final int BREAK = 7;
+    static final int CONTINUE = 8;
+    static final int RETURN = 9;
+    static final int IF = 10;
+    static final int WHILE = 11;
+    static final int FOR = 12;
+    static final int PRINT = 13;
+    static final int INPUT = 14;
+    static final int ACCESS = 15;       // "public", "private"
+    static final int MAIN = 16;
+
+    static final int COUNT = 17;
+
+    private static final int BY_SPELLING = -1;
+
+    // Kind of every token of a TokenType, or BY_SPELLING
+    private static final int[] TYPE_KIND = new int[TokenType.values().length];
+    // For BY_SPELLING types: the words with a kind of their own, and their kinds
+    private static final String[][] WORDS = new String[TokenType.values().length][];
+    private static final int[][] WORD_KINDS = new int[TokenType.values().length][];
+
+    static {
+        Arrays.fill(TYPE_KIND, OTHER);
+        TokenType[] types = {
+            TokenType.TIPO_DATO, TokenType.TIPO_ENTERO, TokenType.TIPO_FLOTANTE, TokenType.TIPO_CADENA_TIPO,
+            TokenType.TIPO_CARACTER, TokenType.TIPO_BOOLEANO, TokenType.TIPO_ARREGLO
+        };
+        for (TokenType type : types) TYPE_KIND[type.ordinal()] = TYPE;
+        TYPE_KIND[TokenType.IDENTIFICADOR.ordinal()] = IDENTIFIER;
+        TYPE_KIND[TokenType.OPERADOR_ASIGNACION.ordinal()] = ASSIGN;
+
+        words(TokenType.PALABRA_RESERVADA, new String[] { "void", "public", "private", "main" },
+                new int[] { TYPE, ACCESS, ACCESS, MAIN });
+        words(TokenType.EXCEPCION, new String[] { "try" }, new int[] { TRY });
+        words(TokenType.SALTO, new String[] { "break", "continue", "return", "throw" },
+                new int[] { BREAK, CONTINUE, RETURN, THROW });
+        words(TokenType.CONDICIONAL, new String[] { "if" }, new int[] { IF });
+        words(TokenType.BUCLE, new String[] { "while", "for" }, new int[] { WHILE, FOR });
+        words(TokenType.FUNCION_SALIDA, new String[] { "print" }, new int[] { PRINT });
+        words(TokenType.FUNCION_ENTRADA, new String[] { "input" }, new int[] { INPUT });
+    }
+
+    private Lookahead() {
+    }
+
+    private static void words(TokenType type, String[] words, int[] kinds) {
+        TYPE_KIND[type.ordinal()] = BY_SPELLING;
+        WORDS[type.ordinal()] = words;
+        WORD_KINDS[type.ordinal()] = kinds;
+    }
+
+    /**
+     * Kind of the token at index, END past the last token
+     */
+    static int kind(TokenCursor tokens, int index) {
+        if (!tokens.has(index)) return END;
+        int type = tokens.type(index).ordinal();
+        int kind = TYPE_KIND[type];
+        if (kind != BY_SPELLING) return kind;
+        String[] words = WORDS[type];
+        for (int i = 0; i < words.length; i++) {
+            if (tokens.lexemeEquals(index, words[i])) return WORD_KINDS[type][i];
+        }
+        return OTHER;
+    }
+}
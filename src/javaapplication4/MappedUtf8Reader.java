@@ -0,0 +1,235 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package javaapplication4;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a UTF-8 file through memory mapping, decoding straight from the
+ * mapped bytes into the caller's buffer. ASCII bytes are classified with a
+ * lookup table and copied as they are; only multi-byte sequences (accented
+ * letters such as á or ñ, or invalid characters) go through the decoder.
+ * The file is never loaded into the Java heap.
+ * @author Gerardo
+ */
+class MappedUtf8Reader extends Reader {
+
+    // Byte classes
+    private static final byte ASCII = 0;
+    private static final byte LEAD_2 = 2;
+    private static final byte LEAD_3 = 3;
+    private static final byte LEAD_4 = 4;
+    private static final byte INVALID = 5;
+
+    private static final byte[] BYTE_CLASS = new byte[256];
+
+    // Mappings are limited to 2 GB; segments overlap so that a sequence
+    // starting before a segment boundary can be decoded from one segment.
+    // Only files whose text still fits in Scanner.MAX_INPUT_LENGTH chars
+    // (many multi-byte characters) can be scanned past the first 2 GB.
+    private static final long SEGMENT_SIZE = 1L << 30;
+    private static final int MAX_SEQUENCE = 4;
+
+    private static final char REPLACEMENT = '�';
+
+    static {
+        for (int b = 0; b < 256; b++) {
+            if (b < 0x80) {
+                BYTE_CLASS[b] = ASCII;
+            } else if (b >= 0xC2 && b <= 0xDF) {
+                BYTE_CLASS[b] = LEAD_2;
+            } else if (b >= 0xE0 && b <= 0xEF) {
+                BYTE_CLASS[b] = LEAD_3;
+            } else if (b >= 0xF0 && b <= 0xF4) {
+                BYTE_CLASS[b] = LEAD_4;
+            } else {
+                BYTE_CLASS[b] = INVALID;   // continuation bytes and overlong leads
+            }
+        }
+    }
+
+    private final MappedByteBuffer[] segments;
+    private int segmentIndex;
+    private MappedByteBuffer bytes;
+    private int position;
+    private int limit;
+    private char pendingLowSurrogate;
+
+    MappedUtf8Reader(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int count = (int) Math.max(1, (size + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+            segments = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long from = i * SEGMENT_SIZE;
+                long length = Math.min(size - from, SEGMENT_SIZE + MAX_SEQUENCE - 1);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, from, Math.max(0, length));
+            }
+        }
+        segmentIndex = 0;
+        bytes = segments[0];
+        position = 0;
+        limit = segmentLimit(0);
+        pendingLowSurrogate = 0;
+    }
+
+    /**
+     * Bytes of segment i that start a new sequence (the overlap belongs to the next one)
+     */
+    private int segmentLimit(int index) {
+        return (int) Math.min(segments[index].capacity(), SEGMENT_SIZE);
+    }
+
+    @Override
+    public int read(char[] target, int offset, int length) {
+        if (length == 0) return 0;
+        int n = 0;
+
+        if (pendingLowSurrogate != 0) {
+            target[offset + n++] = pendingLowSurrogate;
+            pendingLowSurrogate = 0;
+        }
+
+        while (n < length) {
+            if (position >= limit && !nextSegment()) {
+                break;
+            }
+
+            // ASCII fast path
+            int end = Math.min(limit, position + (length - n));
+            while (position < end) {
+                byte b = bytes.get(position);
+                if (b < 0) break;
+                target[offset + n++] = (char) b;
+                position++;
+            }
+            if (position >= end) continue;
+
+            int b = bytes.get(position) & 0xFF;
+            switch (BYTE_CLASS[b]) {
+                case LEAD_2:
+                    target[offset + n++] = decode2(b);
+                    break;
+                case LEAD_3:
+                    target[offset + n++] = decode3(b);
+                    break;
+                case LEAD_4:
+                    int codePoint = decode4(b);
+                    if (codePoint < 0) {
+                        target[offset + n++] = REPLACEMENT;
+                    } else {
+                        target[offset + n++] = Character.highSurrogate(codePoint);
+                        if (n < length) {
+                            target[offset + n++] = Character.lowSurrogate(codePoint);
+                        } else {
+                            pendingLowSurrogate = Character.lowSurrogate(codePoint);
+                        }
+                    }
+                    break;
+                default:
+                    target[offset + n++] = REPLACEMENT;
+                    position++;
+                    break;
+            }
+        }
+
+        return n == 0 ? -1 : n;
+    }
+
+    private boolean nextSegment() {
+        if (segmentIndex + 1 >= segments.length) return false;
+        // A sequence may have ended inside the overlap with the next segment
+        int carried = position - (int) SEGMENT_SIZE;
+        segmentIndex++;
+        bytes = segments[segmentIndex];
+        position = Math.max(0, carried);
+        limit = segmentLimit(segmentIndex);
+        return position < limit;
+    }
+
+    private int continuation(int index) {
+        if (index >= bytes.capacity()) return -1;
+        int b = bytes.get(index) & 0xFF;
+        return (b & 0xC0) == 0x80 ? b & 0x3F : -1;
+    }
+
+    /**
+     * Second byte of the sequence started by lead, or -1. The leads that
+     * could start an overlong form or a code point past U+10FFFF only
+     * allow part of the continuation range there.
+     */
+    private int secondByte(int lead, int index) {
+        int b1 = continuation(index);
+        if (b1 < 0) return -1;
+        switch (lead) {
+            case 0xE0: return b1 >= 0x20 ? b1 : -1;    // A0..BF
+            case 0xF0: return b1 >= 0x10 ? b1 : -1;    // 90..BF
+            case 0xF4: return b1 < 0x10 ? b1 : -1;     // 80..8F
+            default: return b1;
+        }
+    }
+
+    // A sequence that breaks off is replaced by a single U+FFFD together
+    // with the bytes of it that were valid so far, as the JDK decoder
+    // does, so mapFile() and the channel and String paths give the same
+    // chars. Like the JDK, a surrogate is only rejected once its three
+    // bytes are read, and they become one U+FFFD.
+
+    private char decode2(int lead) {
+        int b1 = continuation(position + 1);
+        if (b1 < 0) {
+            position++;
+            return REPLACEMENT;
+        }
+        position += 2;
+        return (char) (((lead & 0x1F) << 6) | b1);
+    }
+
+    private char decode3(int lead) {
+        int b1 = secondByte(lead, position + 1);
+        if (b1 < 0) {
+            position++;
+            return REPLACEMENT;
+        }
+        int b2 = continuation(position + 2);
+        if (b2 < 0) {
+            position += 2;
+            return REPLACEMENT;
+        }
+        position += 3;
+        char c = (char) (((lead & 0x0F) << 12) | (b1 << 6) | b2);
+        return Character.isSurrogate(c) ? REPLACEMENT : c;
+    }
+
+    private int decode4(int lead) {
+        int b1 = secondByte(lead, position + 1);
+        if (b1 < 0) {
+            position++;
+            return -1;
+        }
+        int b2 = continuation(position + 2);
+        if (b2 < 0) {
+            position += 2;
+            return -1;
+        }
+        int b3 = continuation(position + 3);
+        if (b3 < 0) {
+            position += 3;
+            return -1;
+        }
+        position += 4;
+        return ((lead & 0x07) << 18) | (b1 << 12) | (b2 << 6) | b3;
+    }
+
+    @Override
+    public void close() {
+        // Mappings are released by the garbage collector
+    }
+}
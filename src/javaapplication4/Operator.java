@@ -0,0 +1,56 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package javaapplication4;
+
+/**
+ * Integer ids of the expression operators. The scanner gives every
+ * operator token its id, so the parser can look operators up in a table
+ * instead of comparing lexemes.
+ * @author Gerardo
+ */
+final class Operator {
+
+    static final int NONE = 0;
+    static final int ADD = 1;
+    static final int SUBTRACT = 2;
+    static final int MULTIPLY = 3;
+    static final int DIVIDE = 4;
+    static final int EQUAL = 5;
+    static final int NOT_EQUAL = 6;
+    static final int LESS = 7;
+    static final int GREATER = 8;
+    static final int LESS_EQUAL = 9;
+    static final int GREATER_EQUAL = 10;
+    static final int AND = 11;
+    static final int OR = 12;
+    static final int NOT = 13;
+
+    static final int COUNT = 14;
+
+    private static final String[] SPELLING = {
+        null, "+", "-", "*", "/", "==", "!=", "<", ">", "<=", ">=", "&&", "||", "!"
+    };
+
+    private Operator() {
+    }
+
+    /**
+     * Id of the operator spelled as lexeme, for tokens that were not
+     * created by the scanner (read from a token stream, built by hand)
+     */
+    static int of(Token token) {
+        TokenType type = token.getType();
+        if (type != TokenType.OPERADOR_ARITMETICO &&
+            type != TokenType.OPERADOR_COMPARACION &&
+            type != TokenType.OPERADOR_LOGICO) {
+            return NONE;
+        }
+        String lexeme = token.getLexeme();
+        for (int id = 1; id < COUNT; id++) {
+            if (SPELLING[id].equals(lexeme)) return id;
+        }
+        return NONE;
+    }
+}
@@ -0,0 +1,26 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package javaapplication4;
+
+/**
+ * Receives the nodes of a parse as events, in source order, instead of a
+ * whole AST: see Parser.parse(ParseListener), or ASTNode.walk() for a tree
+ * that is already built. The nodes that can have children are reported
+ * with enterNode() before their children and exitNode() after them; the
+ * others (identifiers, types, access modifiers and literals) with
+ * terminal(). The token is the one the ASTNode would hold, or null.
+ * @author Gerardo
+ */
+public interface ParseListener {
+
+    default void enterNode(ASTNode.NodeType type, Token token) {
+    }
+
+    default void exitNode(ASTNode.NodeType type, Token token) {
+    }
+
+    default void terminal(ASTNode.NodeType type, Token token) {
+    }
+}
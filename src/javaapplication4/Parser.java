@@ -4,8 +4,15 @@
  */
 package javaapplication4;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Supplier;
 
 /**
  * Recursive descent parser for syntactic analysis
@@ -13,18 +20,217 @@ import java.util.List;
  * @author Gerardo
  */
 public class Parser {
-    private List<Token> tokens;
+    
+    // Binding power of each Operator id as a binary operator, 0 if it is not one
+    private static final int MULTIPLICATIVE = 5;
+    private static final int[] BINDING_POWER = new int[Operator.COUNT];
+    static {
+        BINDING_POWER[Operator.OR] = 1;
+        BINDING_POWER[Operator.AND] = 2;
+        BINDING_POWER[Operator.EQUAL] = 3;
+        BINDING_POWER[Operator.NOT_EQUAL] = 3;
+        BINDING_POWER[Operator.LESS] = 3;
+        BINDING_POWER[Operator.GREATER] = 3;
+        BINDING_POWER[Operator.LESS_EQUAL] = 3;
+        BINDING_POWER[Operator.GREATER_EQUAL] = 3;
+        BINDING_POWER[Operator.ADD] = 4;
+        BINDING_POWER[Operator.SUBTRACT] = 4;
+        BINDING_POWER[Operator.MULTIPLY] = MULTIPLICATIVE;
+        BINDING_POWER[Operator.DIVIDE] = MULTIPLICATIVE;
+    }
+    
+    // Expressions and blocks nested deeper than this are parsed with
+    // explicit stacks instead of recursion
+    private static final int MAX_RECURSION_DEPTH = 100;
+    
+    // Structure members are parsed in tasks of at least this many tokens
+    private static final int MIN_TASK_TOKENS = 2048;
+    
+    /** Default limit of syntax errors per parse, see setMaxErrors() */
+    public static final int DEFAULT_MAX_ERRORS = 100;
+    static final String TOO_MANY_ERRORS = "Demasiados errores sintácticos, análisis detenido";
+    
+    // Productions chosen by the LL(2) tables below
+    private static final byte NO_PRODUCTION = 0;
+    private static final byte TRY_CATCH = 1;
+    private static final byte THROW_STATEMENT = 2;
+    private static final byte BREAK_STATEMENT = 3;
+    private static final byte CONTINUE_STATEMENT = 4;
+    private static final byte RETURN_STATEMENT = 5;
+    private static final byte IF_STATEMENT = 6;
+    private static final byte WHILE_STATEMENT = 7;
+    private static final byte FOR_STATEMENT = 8;
+    private static final byte DECLARATION = 9;
+    private static final byte ASSIGNMENT = 10;
+    private static final byte EXPRESSION_STATEMENT = 11;
+    private static final byte PRINT_STATEMENT = 12;
+    private static final byte INPUT_STATEMENT = 13;
+    private static final byte FUNCTION_DEFINITION = 14;
+    
+    // Production for a statement or member, indexed by the Lookahead kinds
+    // of its first two tokens
+    private static final byte[][] STATEMENT_TABLE = new byte[Lookahead.COUNT][Lookahead.COUNT];
+    private static final byte[][] MEMBER_TABLE = new byte[Lookahead.COUNT][Lookahead.COUNT];
+    // FIRST sets, without identifiers: the keywords panic mode resynchronizes on
+    private static final boolean[] STATEMENT_FIRST = new boolean[Lookahead.COUNT];
+    private static final boolean[] MEMBER_FIRST = new boolean[Lookahead.COUNT];
+    static {
+        for (int second = 0; second < Lookahead.COUNT; second++) {
+            STATEMENT_TABLE[Lookahead.TRY][second] = TRY_CATCH;
+            STATEMENT_TABLE[Lookahead.THROW][second] = THROW_STATEMENT;
+            STATEMENT_TABLE[Lookahead.BREAK][second] = BREAK_STATEMENT;
+            STATEMENT_TABLE[Lookahead.CONTINUE][second] = CONTINUE_STATEMENT;
+            STATEMENT_TABLE[Lookahead.RETURN][second] = RETURN_STATEMENT;
+            STATEMENT_TABLE[Lookahead.IF][second] = IF_STATEMENT;
+            STATEMENT_TABLE[Lookahead.WHILE][second] = WHILE_STATEMENT;
+            STATEMENT_TABLE[Lookahead.FOR][second] = FOR_STATEMENT;
+            STATEMENT_TABLE[Lookahead.TYPE][second] = DECLARATION;
+            STATEMENT_TABLE[Lookahead.IDENTIFIER][second] = second == Lookahead.ASSIGN
+                    ? ASSIGNMENT : EXPRESSION_STATEMENT;
+            STATEMENT_TABLE[Lookahead.PRINT][second] = PRINT_STATEMENT;
+            STATEMENT_TABLE[Lookahead.INPUT][second] = INPUT_STATEMENT;
+            
+            // A type starts a function only when "main" follows it
+            MEMBER_TABLE[Lookahead.TYPE][second] = second == Lookahead.MAIN
+                    ? FUNCTION_DEFINITION : DECLARATION;
+            MEMBER_TABLE[Lookahead.ACCESS][second] = FUNCTION_DEFINITION;
+        }
+        for (int first = 0; first < Lookahead.COUNT; first++) {
+            if (first == Lookahead.IDENTIFIER) continue;
+            STATEMENT_FIRST[first] = STATEMENT_TABLE[first][Lookahead.OTHER] != NO_PRODUCTION;
+            MEMBER_FIRST[first] = MEMBER_TABLE[first][Lookahead.OTHER] != NO_PRODUCTION;
+        }
+    }
+    
+    private static final ASTNode RECOGNIZED = new Placeholder();
+    
+    private static final Comparator<SyntaxError> BY_POSITION =
+            Comparator.comparingInt(SyntaxError::getLine).thenComparingInt(SyntaxError::getColumn);
+    
+    private TokenCursor tokens;
+    private ListCursor listCursor;  // kept for reuse by reset()
     private int current;
     private List<SyntaxError> errors;
     private ASTNode ast;
+    private boolean parallel;       // parse structure members on the fork-join pool
+    private boolean panicMode;      // an error was reported and the parser has not resynchronized yet
+    private int maxErrors = DEFAULT_MAX_ERRORS;
+    private boolean aborted;        // maxErrors was reached
+    private boolean iterative;      // explicit stacks at every depth
+    private int depth;              // nesting of the recursive expression and block calls
+    private ArrayDeque<BlockFrame> blocks;  // open blocks of parseStatementListIteratively(), or null
+    private boolean recognizing;    // recognize(): no tree is built
+    private ParseListener listener; // parse(ParseListener): events instead of a tree
+    private boolean inExpression;   // with a listener: expressions are built, then reported
+    private ASTNode.NodeType[] openTypes = new ASTNode.NodeType[16];  // nodes entered and not exited
+    private Token[] openTokens = new Token[16];
+    private int openCount;
     
     public Parser(List<Token> tokens) {
+        this(new ListCursor(tokens, null));
+    }
+    
+    /**
+     * Parses tokens as they are produced (e.g. by Scanner.iterator()), so
+     * parsing starts with the first token instead of after the whole scan.
+     * The EOF token ends the stream.
+     */
+    public Parser(Iterator<Token> stream) {
+        this(new ListCursor(null, stream));
+    }
+    
+    /**
+     * Parses a compact TokenBuffer; Token objects are only created for
+     * the tokens that end up in the AST or in an error
+     */
+    public Parser(TokenBuffer tokens) {
+        this(tokens.cursor());
+    }
+    
+    private Parser(TokenCursor tokens) {
         this.tokens = tokens;
+        this.listCursor = tokens instanceof ListCursor ? (ListCursor) tokens : null;
         this.current = 0;
         this.errors = new ArrayList<>();
         this.ast = null;
     }
     
+    /**
+     * Prepares the parser for another token list, reusing its error list
+     * and cursor. The errors and AST of the previous parse must not be
+     * used after this call.
+     */
+    public Parser reset(List<Token> tokens) {
+        return reset(listCursor(tokens, null));
+    }
+    
+    public Parser reset(Iterator<Token> stream) {
+        return reset(listCursor(null, stream));
+    }
+    
+    public Parser reset(TokenBuffer tokens) {
+        return reset(tokens.cursor());
+    }
+    
+    private Parser reset(TokenCursor tokens) {
+        this.tokens = tokens;
+        this.current = 0;
+        this.errors.clear();
+        this.ast = null;
+        this.panicMode = false;
+        this.aborted = false;
+        this.depth = 0;
+        this.blocks = null;
+        return this;
+    }
+    
+    /**
+     * Parses every expression and block with explicit stacks on the heap
+     * instead of recursive calls. Without it, only the parts nested deeper
+     * than MAX_RECURSION_DEPTH are, so deep nesting never overflows the
+     * call stack either way; this mode also keeps the stack use of the
+     * parser constant, e.g. on threads with a small stack.
+     */
+    public void setIterative(boolean iterative) {
+        this.iterative = iterative;
+    }
+    
+    public boolean isIterative() {
+        return iterative;
+    }
+    
+    /**
+     * Limits the number of syntax errors of a parse. Once maxErrors errors
+     * have been reported, the next one becomes a single "too many errors"
+     * error and parsing stops there, as if the input had ended.
+     */
+    public void setMaxErrors(int maxErrors) {
+        if (maxErrors < 0) {
+            throw new IllegalArgumentException("maxErrors must not be negative: " + maxErrors);
+        }
+        this.maxErrors = maxErrors;
+    }
+    
+    public int getMaxErrors() {
+        return maxErrors;
+    }
+    
+    /**
+     * True if the last parse stopped because it reached the error limit
+     */
+    public boolean isAborted() {
+        return aborted;
+    }
+    
+    private ListCursor listCursor(List<Token> tokens, Iterator<Token> stream) {
+        if (listCursor == null) {
+            listCursor = new ListCursor(tokens, stream);
+        } else {
+            listCursor.reset(tokens, stream);
+        }
+        return listCursor;
+    }
+    
     /**
      * Main entry point - parses the entire program
      */
@@ -40,11 +246,75 @@ public class Parser {
         }
     }
     
+    /**
+     * Same as parse(), but the members of the structure are parsed on the
+     * common fork-join pool. A pass over the token types finds where each
+     * member ends (a ";" or the ")" that closes a function body, outside
+     * any parentheses), and consecutive members are parsed in tasks by
+     * separate parsers. A task whose last member does not end where the
+     * pass expected, which only happens with syntax errors, is parsed
+     * again sequentially together with everything after it, so the AST is
+     * the same as with parse(). Errors are sorted by position.
+     * A streamed token source is read to the end first.
+     */
+    public ASTNode parseParallel() {
+        tokens.has(Integer.MAX_VALUE - 1);   // the tasks must not pull from a stream
+        parallel = true;
+        try {
+            parse();
+        } finally {
+            parallel = false;
+        }
+        errors.sort(BY_POSITION);
+        return ast;
+    }
+    
+    /**
+     * Checks the tokens against the grammar without building the AST. The
+     * errors are the same as those of parse(), but no tree node is
+     * allocated, so it is cheaper when only validity and the errors matter.
+     * @return true if there were no syntax errors
+     */
+    public boolean recognize() {
+        recognizing = true;
+        try {
+            parse();
+        } finally {
+            recognizing = false;
+            ast = null;
+        }
+        return errors.isEmpty();
+    }
+    
+    /**
+     * Parses without building the AST, reporting its nodes to listener as
+     * they are recognized, in the order ASTNode.walk() would report the
+     * tree of parse(). Only the nodes still open are kept, so memory grows
+     * with the nesting and not with the size of the source. Expressions
+     * are the exception: an operator is only known after its left operand,
+     * so each expression is built as a tree and reported once complete.
+     * @return true if there were no syntax errors
+     */
+    public boolean parse(ParseListener listener) {
+        this.listener = listener;
+        try {
+            parse();
+            exitTo(0);
+        } finally {
+            this.listener = null;
+            inExpression = false;
+            Arrays.fill(openTokens, 0, openCount, null);
+            openCount = 0;
+            ast = null;
+        }
+        return errors.isEmpty();
+    }
+    
     /**
      * PROGRAM ::= STRUCTURE_DEFINITION
      */
     private ASTNode parseProgram() {
-        ASTNode program = new ASTNode(ASTNode.NodeType.PROGRAM);
+        ASTNode program = node(ASTNode.NodeType.PROGRAM);
         ASTNode structure = parseStructure();
         if (structure != null) {
             program.addChild(structure);
@@ -56,14 +326,13 @@ public class Parser {
      * STRUCTURE_DEFINITION ::= "structure" IDENTIFIER "(" MEMBER_LIST ")"
      */
     private ASTNode parseStructure() {
-        ASTNode structure = new ASTNode(ASTNode.NodeType.STRUCTURE);
-        
         // Expect 'structure'
         if (!match(TokenType.PALABRA_RESERVADA, "structure")) {
             error("Se esperaba la palabra clave 'structure' al inicio del programa", peek());
             return null;
         }
         // 'structure' already consumed by match()
+        ASTNode structure = node(ASTNode.NodeType.STRUCTURE);
         
         // Expect structure name (identifier)
         Token nameToken = consume(TokenType.IDENTIFICADOR, "Se esperaba nombre de estructura");
@@ -72,12 +341,15 @@ public class Parser {
             if (!nameToken.getLexeme().equals("Main")) {
                 error("Se esperaba 'Main' como nombre de la estructura, pero se encontró '" + nameToken.getLexeme() + "'", nameToken);
             } else {
-                structure.addChild(new ASTNode(ASTNode.NodeType.IDENTIFIER, nameToken));
+                structure.addChild(node(ASTNode.NodeType.IDENTIFIER, nameToken));
             }
         }
         
         // Expect '('
-        consume(TokenType.APERTURA, "Se esperaba '(' después del nombre de estructura");
+        Token open = consume(TokenType.APERTURA, "Se esperaba '(' después del nombre de estructura");
+        if (open != null) {
+            panicMode = false;
+        }
         
         // Parse member list
         ASTNode members = parseMemberList();
@@ -86,7 +358,10 @@ public class Parser {
         }
         
         // Expect ')'
-        consume(TokenType.CIERRE, "Se esperaba ')' para cerrar la estructura");
+        Token close = consume(TokenType.CIERRE, "Se esperaba ')' para cerrar la estructura");
+        if (open != null && close != null) {
+            members.setRange(open, close);
+        }
         
         return structure;
     }
@@ -95,82 +370,169 @@ public class Parser {
      * MEMBER_LIST ::= (DECLARATION | FUNCTION_DEFINITION)*
      */
     private ASTNode parseMemberList() {
-        ASTNode members = new ASTNode(ASTNode.NodeType.STATEMENT_LIST);
+        ASTNode members = node(ASTNode.NodeType.STATEMENT_LIST);
+        int errorsBefore = errors.size();
+        int open = openCount;
         
+        if (parallel) {
+            parseMembersInParallel(members);
+        }
         while (!check(TokenType.CIERRE) && !isAtEnd()) {
-            ASTNode member = null;
-            
-            if (isType(peek())) {
-                // Could be declaration or function return type
-                if (isFunctionDefinition()) {
-                    member = parseFunction();
-                } else {
-                    member = parseDeclaration();
-                }
-            } else if (check(TokenType.PALABRA_RESERVADA, "public") || 
-                       check(TokenType.PALABRA_RESERVADA, "private")) {
-                // Function with access modifier - parseFunction will consume the modifier
-                member = parseFunction();
-            }
-            
+            int start = current;
+            ASTNode member = parseMember();
+            exitTo(open);
             if (member != null) {
                 members.addChild(member);
-            } else {
-                // Skip unknown token and continue
-                error("Token inesperado en el cuerpo de la estructura", peek());
-                advance();
+            }
+            if (panicMode) {
+                synchronize(true, start);
             }
         }
         
+        members.setErrorCount(errors.size() - errorsBefore);
         return members;
     }
     
     /**
-     * Check if current position starts a function definition
+     * Parses members in tasks on the fork-join pool, adding them to the
+     * list in source order, and moves to the first token that no task parsed
+     * as expected (normally the ")" that closes the structure)
      */
-    private boolean isFunctionDefinition() {
-        // Look ahead: type IDENTIFIER '[' ']' or access modifier
-        int save = current;
-        boolean result = false;
-        
-        // Check for access modifier
-        if (match(TokenType.PALABRA_RESERVADA, "public") || 
-            match(TokenType.PALABRA_RESERVADA, "private")) {
-            // Continue checking
+    private void parseMembersInParallel(ASTNode members) {
+        int[] bounds = memberBounds(current);
+        List<Integer> taskStarts = new ArrayList<>();
+        for (int i = 0; i < bounds.length - 1; i++) {
+            if (taskStarts.isEmpty() || bounds[i] - taskStarts.get(taskStarts.size() - 1) >= MIN_TASK_TOKENS) {
+                taskStarts.add(bounds[i]);
+            }
         }
+        if (taskStarts.size() < 2) {
+            return;   // not worth splitting
+        }
+        taskStarts.add(bounds[bounds.length - 1]);
         
-        // Check for 'const'
-        if (match(TokenType.PALABRA_RESERVADA, "const")) {
-            // Continue
+        List<ForkJoinTask<Parser>> tasks = new ArrayList<>();
+        for (int i = 0; i < taskStarts.size() - 1; i++) {
+            int from = taskStarts.get(i);
+            int to = taskStarts.get(i + 1);
+            tasks.add(ForkJoinPool.commonPool().submit(() -> parseMembers(from, to)));
         }
         
-        // Check for type
-        if (isType(peek())) {
-            advance();
-            // Check for 'main' or identifier
-            if (check(TokenType.IDENTIFICADOR) || check(TokenType.PALABRA_RESERVADA)) {
-                Token next = peek();
-                if (next.getLexeme().equals("main")) {
-                    result = true;
-                }
+        for (int i = 0; i < tasks.size(); i++) {
+            Parser task = tasks.get(i).join();
+            if (task.current != taskStarts.get(i + 1) || task.aborted
+                    || errors.size() + task.errors.size() > maxErrors) {
+                // Out of step with the pre-pass, or the error limit is reached
+                // in this task: the rest is parsed sequentially
+                for (int k = i + 1; k < tasks.size(); k++) tasks.get(k).cancel(false);
+                return;
+            }
+            for (ASTNode member : task.ast.getChildren()) {
+                members.addChild(member);
             }
+            errors.addAll(task.errors);
+            current = task.current;
+        }
+    }
+    
+    /**
+     * Parses members from token index from while the position is before
+     * to, in a parser of its own; its AST is a list of the members
+     */
+    private Parser parseMembers(int from, int to) {
+        Parser task = new Parser(tokens);
+        task.current = from;
+        task.maxErrors = maxErrors;
+        task.iterative = iterative;
+        task.recognizing = recognizing;
+        task.ast = node(ASTNode.NodeType.STATEMENT_LIST);
+        while (task.current < to && !task.check(TokenType.CIERRE) && !task.isAtEnd()) {
+            int start = task.current;
+            ASTNode member = task.parseMember();
+            if (member != null) {
+                task.ast.addChild(member);
+            }
+            if (task.panicMode) {
+                task.synchronize(true, start);
+            }
+        }
+        return task;
+    }
+    
+    /**
+     * Token indexes where structure members start, found by tracking the
+     * parenthesis depth from index from; the last element is the index of
+     * the ")" that closes the structure, or the end of input
+     */
+    private int[] memberBounds(int from) {
+        int[] bounds = new int[64];
+        int count = 0;
+        bounds[count++] = from;
+        int depth = 0;
+        int i = from;
+        for (; tokens.has(i); i++) {
+            TokenType type = tokens.type(i);
+            boolean ends = false;
+            if (type == TokenType.APERTURA) {
+                depth++;
+            } else if (type == TokenType.CIERRE) {
+                if (depth == 0) break;
+                ends = --depth == 0;
+            } else if (type == TokenType.PUNTO_Y_COMA) {
+                ends = depth == 0;
+            }
+            if (ends) {
+                if (count == bounds.length) bounds = Arrays.copyOf(bounds, count * 2);
+                bounds[count++] = i + 1;
+            }
+        }
+        if (bounds[count - 1] != i) {
+            if (count == bounds.length) bounds = Arrays.copyOf(bounds, count + 1);
+            bounds[count++] = i;
+        }
+        return Arrays.copyOf(bounds, count);
+    }
+    
+    /**
+     * One DECLARATION or FUNCTION_DEFINITION of the structure, or null after
+     * reporting and skipping an unexpected token
+     */
+    private ASTNode parseMember() {
+        int start = current;
+        int errorsBefore = errors.size();
+        ASTNode member = null;
+        
+        // A type followed by "main" is the return type of a function; an
+        // access modifier is consumed by parseFunction
+        int production = MEMBER_TABLE[Lookahead.kind(tokens, current)][Lookahead.kind(tokens, current + 1)];
+        if (production == FUNCTION_DEFINITION) {
+            member = parseFunction();
+        } else if (production == DECLARATION) {
+            member = parseDeclaration();
         }
         
-        current = save;
-        return result;
+        if (member == null) {
+            // Skip unknown token and continue
+            error("Token inesperado en el cuerpo de la estructura", peek());
+            skipUnexpected();
+            return null;
+        }
+        member.setRange(tokens.token(start), previous());
+        member.setErrorCount(errors.size() - errorsBefore);
+        return member;
     }
     
     /**
      * FUNCTION_DEFINITION ::= ACCESS_MODIFIER "const" TYPE "main" "[" "]" "(" STATEMENT_LIST ")"
      */
     private ASTNode parseFunction() {
-        ASTNode function = new ASTNode(ASTNode.NodeType.FUNCTION);
+        ASTNode function = node(ASTNode.NodeType.FUNCTION);
         
         // Optional access modifier
         if (match(TokenType.PALABRA_RESERVADA, "public") || 
             match(TokenType.PALABRA_RESERVADA, "private")) {
             Token access = previous();
-            function.addChild(new ASTNode(ASTNode.NodeType.ACCESS_MODIFIER, access));
+            function.addChild(node(ASTNode.NodeType.ACCESS_MODIFIER, access));
         }
         
         // Expect 'const'
@@ -179,7 +541,7 @@ public class Parser {
         // Expect return type
         Token returnType = parseType();
         if (returnType != null) {
-            function.addChild(new ASTNode(ASTNode.NodeType.TYPE, returnType));
+            function.addChild(node(ASTNode.NodeType.TYPE, returnType));
         }
         
         // Expect 'main' or function name
@@ -195,24 +557,17 @@ public class Parser {
         }
         
         if (funcName != null) {
-            function.addChild(new ASTNode(ASTNode.NodeType.IDENTIFIER, funcName));
+            function.addChild(node(ASTNode.NodeType.IDENTIFIER, funcName));
         }
         
         // Expect '[' ']'
         consume(TokenType.AGRUPADOR, "[", "Se esperaba '[' después del nombre de función");
         consume(TokenType.AGRUPADOR, "]", "Se esperaba ']' después de '['");
         
-        // Expect '('
-        consume(TokenType.APERTURA, "Se esperaba '(' para iniciar el cuerpo de la función");
-        
-        // Parse statement list
-        ASTNode body = parseStatementList();
-        if (body != null) {
-            function.addChild(body);
-        }
-        
-        // Expect ')'
-        consume(TokenType.CIERRE, "Se esperaba ')' para cerrar el cuerpo de la función");
+        // Parse "(" statement list ")"
+        ASTNode body = parseBlock("Se esperaba '(' para iniciar el cuerpo de la función",
+                "Se esperaba ')' para cerrar el cuerpo de la función");
+        function.addChild(body);
         
         return function;
     }
@@ -221,131 +576,207 @@ public class Parser {
      * STATEMENT_LIST ::= STATEMENT*
      */
     private ASTNode parseStatementList() {
-        ASTNode statements = new ASTNode(ASTNode.NodeType.STATEMENT_LIST);
+        if (iterative || depth >= MAX_RECURSION_DEPTH) {
+            return parseStatementListIteratively();
+        }
+        depth++;
+        ASTNode statements = node(ASTNode.NodeType.STATEMENT_LIST);
+        int errorsBefore = errors.size();
+        int open = openCount;
         
         while (!check(TokenType.CIERRE) && !isAtEnd()) {
+            int start = current;
             ASTNode statement = parseStatement();
+            exitTo(open);
             if (statement != null) {
+                statement.setRange(tokens.token(start), previous());
                 statements.addChild(statement);
             }
+            if (panicMode) {
+                synchronize(false, start);
+            }
         }
         
+        statements.setErrorCount(errors.size() - errorsBefore);
+        depth--;
         return statements;
     }
     
     /**
-     * STATEMENT ::= DECLARATION | ASSIGNMENT | IF_STATEMENT | WHILE_STATEMENT | 
-     *               FOR_STATEMENT | TRY_CATCH | THROW_STATEMENT | BREAK_STATEMENT | 
-     *               CONTINUE_STATEMENT | RETURN_STATEMENT | FUNCTION_CALL
+     * parseStatementList() with an explicit stack of open blocks. The
+     * compound statements parse their header as usual and, instead of
+     * calling parseBlock(), push a frame for their block (see parseBody());
+     * when the block is closed the statement continues from its frame.
      */
-    private ASTNode parseStatement() {
-        if (isAtEnd()) return null;
-        
-        Token token = peek();
-        
-        // Try-catch-finally
-        if (match(TokenType.EXCEPCION, "try")) {
-            return parseTryCatch();
-        }
-        
-        // Throw statement
-        if (match(TokenType.SALTO, "throw")) {
-            return parseThrowStatement();
+    private ASTNode parseStatementListIteratively() {
+        blocks = new ArrayDeque<>();
+        ASTNode statements = node(ASTNode.NodeType.STATEMENT_LIST);
+        BlockFrame list = new BlockFrame(statements, openCount, null, null, errors.size(), null, null);
+        blocks.push(list);
+        
+        while (true) {
+            BlockFrame frame = blocks.peek();
+            if (!check(TokenType.CIERRE) && !isAtEnd()) {
+                frame.statementStart = current;
+                ASTNode statement = parseStatement();
+                if (blocks.peek() == frame) {
+                    endStatement(frame, statement);
+                }
+                continue;
+            }
+            
+            frame.statements.setErrorCount(errors.size() - frame.errorsBefore);
+            if (frame == list) break;
+            blocks.pop();
+            Token close = consume(TokenType.CIERRE, frame.closeMessage);
+            if (frame.open != null && close != null) {
+                frame.statements.setRange(frame.open, close);
+            }
+            exitTo(frame.openNodes - 1);
+            frame.owner.addChild(frame.statements);
+            
+            BlockFrame parent = blocks.peek();
+            ASTNode statement = frame.rest != null ? frame.rest.get() : frame.owner;
+            if (blocks.peek() == parent) {
+                endStatement(parent, statement);
+            }
         }
         
-        // Break statement
-        if (match(TokenType.SALTO, "break")) {
-            return parseBreakStatement();
+        blocks = null;
+        return list.statements;
+    }
+    
+    /**
+     * Adds a finished statement to its list, as the loop of parseStatementList() does
+     */
+    private void endStatement(BlockFrame frame, ASTNode statement) {
+        exitTo(frame.openNodes);
+        if (statement != null) {
+            statement.setRange(tokens.token(frame.statementStart), previous());
+            frame.statements.addChild(statement);
         }
-        
-        // Continue statement
-        if (match(TokenType.SALTO, "continue")) {
-            return parseContinueStatement();
+        if (panicMode) {
+            synchronize(false, frame.statementStart);
         }
-        
-        // Return statement
-        if (match(TokenType.SALTO, "return")) {
-            return parseReturnStatement();
+    }
+    
+    /**
+     * Parses a block of a compound statement and adds it to the statement,
+     * then continues with rest (if any), which parses what follows the
+     * block and returns the finished statement. Inside
+     * parseStatementListIteratively() the block is only opened here, and
+     * rest runs once it is closed.
+     */
+    private ASTNode parseBody(ASTNode statement, String openMessage, String closeMessage,
+                              Supplier<ASTNode> rest) {
+        if (blocks == null) {
+            statement.addChild(parseBlock(openMessage, closeMessage));
+            return rest != null ? rest.get() : statement;
         }
-        
-        // If statement
-        if (match(TokenType.CONDICIONAL, "if")) {
-            return parseIfStatement();
+        Token open = consume(TokenType.APERTURA, openMessage);
+        if (open != null) {
+            panicMode = false;
         }
-        
-        // While statement
-        if (match(TokenType.BUCLE, "while")) {
-            return parseWhileStatement();
+        ASTNode statements = node(ASTNode.NodeType.STATEMENT_LIST);
+        blocks.push(new BlockFrame(statements, openCount, open, closeMessage, errors.size(), statement, rest));
+        return statement;
+    }
+    
+    /**
+     * BLOCK ::= "(" STATEMENT_LIST ")"
+     * The list gets the parentheses as its range when both are present.
+     * A "(" that opens a block ends the recovery from an earlier error.
+     */
+    private ASTNode parseBlock(String openMessage, String closeMessage) {
+        Token open = consume(TokenType.APERTURA, openMessage);
+        if (open != null) {
+            panicMode = false;
         }
-        
-        // For statement
-        if (match(TokenType.BUCLE, "for")) {
-            return parseForStatement();
+        int openBefore = openCount;
+        ASTNode statements = parseStatementList();
+        Token close = consume(TokenType.CIERRE, closeMessage);
+        if (open != null && close != null) {
+            statements.setRange(open, close);
         }
+        exitTo(openBefore);
+        return statements;
+    }
+    
+    /**
+     * STATEMENT ::= DECLARATION | ASSIGNMENT | IF_STATEMENT | WHILE_STATEMENT | 
+     *               FOR_STATEMENT | TRY_CATCH | THROW_STATEMENT | BREAK_STATEMENT | 
+     *               CONTINUE_STATEMENT | RETURN_STATEMENT | FUNCTION_CALL
+     */
+    private ASTNode parseStatement() {
+        if (isAtEnd()) return null;
         
-        // Check if it's a type declaration
-        if (isType(token)) {
-            // Look ahead to see if it's declaration or assignment
-            int save = current;
-            advance(); // consume type
-            if (check(TokenType.IDENTIFICADOR)) {
-                advance(); // consume identifier
-                if (check(TokenType.OPERADOR_ASIGNACION)) {
-                    current = save;
-                    return parseDeclaration();
-                } else {
-                    current = save;
-                    return parseDeclaration();
-                }
-            }
-            current = save;
-            return parseDeclaration();
-        }
+        int token = current;
         
-        // Assignment or function call (starts with identifier)
-        if (check(TokenType.IDENTIFICADOR)) {
-            int save = current;
-            advance(); // consume identifier
-            if (check(TokenType.OPERADOR_ASIGNACION)) {
-                current = save;
+        // One lookup on the kinds of the next two tokens picks the production:
+        // an identifier starts an assignment when "=" follows it
+        int production = STATEMENT_TABLE[Lookahead.kind(tokens, current)][Lookahead.kind(tokens, current + 1)];
+        switch (production) {
+            case TRY_CATCH:
+                advance();
+                return parseTryCatch();
+            case THROW_STATEMENT:
+                advance();
+                return parseThrowStatement();
+            case BREAK_STATEMENT:
+                advance();
+                return parseBreakStatement();
+            case CONTINUE_STATEMENT:
+                advance();
+                return parseContinueStatement();
+            case RETURN_STATEMENT:
+                advance();
+                return parseReturnStatement();
+            case IF_STATEMENT:
+                advance();
+                return parseIfStatement();
+            case WHILE_STATEMENT:
+                advance();
+                return parseWhileStatement();
+            case FOR_STATEMENT:
+                advance();
+                return parseForStatement();
+            case DECLARATION:
+                return parseDeclaration();
+            case ASSIGNMENT:
                 return parseAssignment();
-            }
-            current = save;
-            // Try as expression statement or function call
-            return parseExpressionStatement();
-        }
-        
-        // Function calls: print or input
-        if (match(TokenType.FUNCION_SALIDA, "print")) {
-            return parsePrintStatement();
-        }
-        
-        if (match(TokenType.FUNCION_ENTRADA, "input")) {
-            return parseInputStatement();
+            case EXPRESSION_STATEMENT:
+                // Expression statement or function call
+                return parseExpressionStatement();
+            case PRINT_STATEMENT:
+                advance();
+                return parsePrintStatement();
+            case INPUT_STATEMENT:
+                advance();
+                return parseInputStatement();
+            default:
+                // Unknown statement - skip and report error
+                error("Token inesperado en la instrucción", tokens.token(token));
+                skipUnexpected();
+                return null;
         }
-        
-        // Unknown statement - skip and report error
-        error("Token inesperado en la instrucción", token);
-        advance();
-        return null;
     }
     
     /**
      * DECLARATION ::= TYPE IDENTIFIER ("=" EXPRESSION)? ";"
      */
     private ASTNode parseDeclaration() {
-        ASTNode declaration = new ASTNode(ASTNode.NodeType.DECLARATION);
+        ASTNode declaration = node(ASTNode.NodeType.DECLARATION);
         
         // Parse type
         Token typeToken = parseType();
         if (typeToken != null) {
-            declaration.addChild(new ASTNode(ASTNode.NodeType.TYPE, typeToken));
+            declaration.addChild(node(ASTNode.NodeType.TYPE, typeToken));
         }
         
         // Parse variable name
         Token name = consume(TokenType.IDENTIFICADOR, "Se esperaba nombre de variable después del tipo");
         if (name != null) {
-            declaration.addChild(new ASTNode(ASTNode.NodeType.IDENTIFIER, name));
+            declaration.addChild(node(ASTNode.NodeType.IDENTIFIER, name));
         }
         
         // Optional initialization
@@ -366,11 +797,11 @@ public class Parser {
      * ASSIGNMENT ::= IDENTIFIER "=" EXPRESSION ";"
      */
     private ASTNode parseAssignment() {
-        ASTNode assignment = new ASTNode(ASTNode.NodeType.ASSIGNMENT);
+        ASTNode assignment = node(ASTNode.NodeType.ASSIGNMENT);
         
         Token name = consume(TokenType.IDENTIFICADOR, "Se esperaba nombre de variable");
         if (name != null) {
-            assignment.addChild(new ASTNode(ASTNode.NodeType.IDENTIFIER, name));
+            assignment.addChild(node(ASTNode.NodeType.IDENTIFIER, name));
         }
         
         consume(TokenType.OPERADOR_ASIGNACION, "Se esperaba '=' en la asignación");
@@ -389,63 +820,69 @@ public class Parser {
      * IF_STATEMENT ::= "if" "(" EXPRESSION ")" "(" STATEMENT_LIST ")" (ELSE_PART)?
      */
     private ASTNode parseIfStatement() {
-        ASTNode ifStmt = new ASTNode(ASTNode.NodeType.IF_STATEMENT);
+        ASTNode ifStmt = node(ASTNode.NodeType.IF_STATEMENT);
         
         // 'if' already consumed
-        consume(TokenType.APERTURA, "Se esperaba '(' después de 'if'");
-        
-        ASTNode condition = parseExpression();
-        if (condition != null) {
-            ifStmt.addChild(condition);
-        }
-        
-        consume(TokenType.CIERRE, "Se esperaba ')' después de la condición if");
-        consume(TokenType.APERTURA, "Se esperaba '(' para iniciar el cuerpo del if");
-        
-        ASTNode thenBranch = parseStatementList();
-        if (thenBranch != null) {
-            ifStmt.addChild(thenBranch);
-        }
-        
-        consume(TokenType.CIERRE, "Se esperaba ')' para cerrar el cuerpo del if");
-        
-        // Optional else or elseif
-        if (match(TokenType.CONDICIONAL, "else")) {
-            ASTNode elseBranch = parseElsePart();
-            if (elseBranch != null) {
-                ifStmt.addChild(elseBranch);
+        return parseIfBranch(ifStmt, ifStmt);
+    }
+    
+    /**
+     * Parses the condition and body of an if or elseif into branch, and
+     * the else parts after it; returns the whole if statement (root).
+     * Each elseif is an IF_STATEMENT, the last child of the previous
+     * branch; chains of them are parsed in a loop.
+     */
+    private ASTNode parseIfBranch(ASTNode root, ASTNode branch) {
+        while (true) {
+            consume(TokenType.APERTURA, "Se esperaba '(' después de 'if'");
+            
+            ASTNode condition = parseExpression();
+            if (condition != null) {
+                branch.addChild(condition);
             }
-        } else if (match(TokenType.CONDICIONAL, "elseif")) {
-            ASTNode elseIfBranch = parseIfStatement();
-            if (elseIfBranch != null) {
-                // Mark as elseif
-                elseIfBranch.setType(ASTNode.NodeType.IF_STATEMENT);
-                ifStmt.addChild(elseIfBranch);
+            
+            consume(TokenType.CIERRE, "Se esperaba ')' después de la condición if");
+            
+            if (blocks != null) {
+                ASTNode thisBranch = branch;
+                return parseBody(branch, "Se esperaba '(' para iniciar el cuerpo del if",
+                        "Se esperaba ')' para cerrar el cuerpo del if", () -> parseElsePart(root, thisBranch));
+            }
+            ASTNode thenBranch = parseBlock("Se esperaba '(' para iniciar el cuerpo del if",
+                    "Se esperaba ')' para cerrar el cuerpo del if");
+            branch.addChild(thenBranch);
+            
+            if (!match(TokenType.CONDICIONAL, "elseif")) {
+                return parseElsePart(root, branch);
             }
+            ASTNode elseIfBranch = node(ASTNode.NodeType.IF_STATEMENT);
+            branch.addChild(elseIfBranch);
+            branch = elseIfBranch;
         }
-        
-        return ifStmt;
     }
     
     /**
-     * ELSE_PART ::= "else" "(" STATEMENT_LIST ")"
+     * ELSE_PART ::= "else" "(" STATEMENT_LIST ")" | "elseif" IF_BRANCH
+     * Optional; adds the else block or elseif branch to branch and returns root
      */
-    private ASTNode parseElsePart() {
-        // 'else' already consumed
-        consume(TokenType.APERTURA, "Se esperaba '(' después de 'else'");
-        
-        ASTNode elseBody = parseStatementList();
-        
-        consume(TokenType.CIERRE, "Se esperaba ')' para cerrar el cuerpo del else");
-        
-        return elseBody;
+    private ASTNode parseElsePart(ASTNode root, ASTNode branch) {
+        if (match(TokenType.CONDICIONAL, "else")) {
+            return parseBody(branch, "Se esperaba '(' después de 'else'",
+                    "Se esperaba ')' para cerrar el cuerpo del else", () -> root);
+        }
+        if (match(TokenType.CONDICIONAL, "elseif")) {
+            ASTNode elseIfBranch = node(ASTNode.NodeType.IF_STATEMENT);
+            branch.addChild(elseIfBranch);
+            return parseIfBranch(root, elseIfBranch);
+        }
+        return root;
     }
     
     /**
      * WHILE_STATEMENT ::= "while" "(" EXPRESSION ")" "(" STATEMENT_LIST ")"
      */
     private ASTNode parseWhileStatement() {
-        ASTNode whileStmt = new ASTNode(ASTNode.NodeType.WHILE_STATEMENT);
+        ASTNode whileStmt = node(ASTNode.NodeType.WHILE_STATEMENT);
         
         // 'while' already consumed
         consume(TokenType.APERTURA, "Se esperaba '(' después de 'while'");
@@ -456,29 +893,24 @@ public class Parser {
         }
         
         consume(TokenType.CIERRE, "Se esperaba ')' después de la condición while");
-        consume(TokenType.APERTURA, "Se esperaba '(' para iniciar el cuerpo del while");
-        
-        ASTNode body = parseStatementList();
-        if (body != null) {
-            whileStmt.addChild(body);
-        }
         
-        consume(TokenType.CIERRE, "Se esperaba ')' para cerrar el cuerpo del while");
-        
-        return whileStmt;
+        return parseBody(whileStmt, "Se esperaba '(' para iniciar el cuerpo del while",
+                "Se esperaba ')' para cerrar el cuerpo del while", null);
     }
     
     /**
      * FOR_STATEMENT ::= "for" "(" ASSIGNMENT ";" EXPRESSION ";" ASSIGNMENT ")" "(" STATEMENT_LIST ")"
      */
     private ASTNode parseForStatement() {
-        ASTNode forStmt = new ASTNode(ASTNode.NodeType.FOR_STATEMENT);
+        ASTNode forStmt = node(ASTNode.NodeType.FOR_STATEMENT);
         
         // 'for' already consumed
         consume(TokenType.APERTURA, "Se esperaba '(' después de 'for'");
         
         // Initialization
+        int open = openCount;
         ASTNode init = parseAssignment();
+        exitTo(open);
         if (init != null) {
             forStmt.addChild(init);
         }
@@ -493,60 +925,41 @@ public class Parser {
         
         // Increment
         ASTNode increment = parseAssignment();
+        exitTo(open);
         if (increment != null) {
             forStmt.addChild(increment);
         }
         
         consume(TokenType.CIERRE, "Se esperaba ')' después de las cláusulas del for");
-        consume(TokenType.APERTURA, "Se esperaba '(' para iniciar el cuerpo del for");
-        
-        ASTNode body = parseStatementList();
-        if (body != null) {
-            forStmt.addChild(body);
-        }
-        
-        consume(TokenType.CIERRE, "Se esperaba ')' para cerrar el cuerpo del for");
         
-        return forStmt;
+        return parseBody(forStmt, "Se esperaba '(' para iniciar el cuerpo del for",
+                "Se esperaba ')' para cerrar el cuerpo del for", null);
     }
     
     /**
      * TRY_CATCH ::= "try" "(" STATEMENT_LIST ")" "catch" "(" STATEMENT_LIST ")" (FINALLY)?
      */
     private ASTNode parseTryCatch() {
-        ASTNode tryCatch = new ASTNode(ASTNode.NodeType.TRY_CATCH);
+        ASTNode tryCatch = node(ASTNode.NodeType.TRY_CATCH);
         
         // 'try' already consumed
-        consume(TokenType.APERTURA, "Se esperaba '(' después de 'try'");
-        
-        ASTNode tryBody = parseStatementList();
-        if (tryBody != null) {
-            tryCatch.addChild(tryBody);
-        }
-        
-        consume(TokenType.CIERRE, "Se esperaba ')' para cerrar el cuerpo del try");
+        return parseBody(tryCatch, "Se esperaba '(' después de 'try'",
+                "Se esperaba ')' para cerrar el cuerpo del try", () -> parseCatch(tryCatch));
+    }
+    
+    private ASTNode parseCatch(ASTNode tryCatch) {
         consume(TokenType.EXCEPCION, "catch", "Se esperaba 'catch' después del bloque try");
-        consume(TokenType.APERTURA, "Se esperaba '(' después de 'catch'");
-        
-        ASTNode catchBody = parseStatementList();
-        if (catchBody != null) {
-            tryCatch.addChild(catchBody);
-        }
-        
-        consume(TokenType.CIERRE, "Se esperaba ')' para cerrar el cuerpo del catch");
         
+        return parseBody(tryCatch, "Se esperaba '(' después de 'catch'",
+                "Se esperaba ')' para cerrar el cuerpo del catch", () -> parseFinally(tryCatch));
+    }
+    
+    private ASTNode parseFinally(ASTNode tryCatch) {
         // Optional finally
         if (match(TokenType.EXCEPCION, "finally")) {
-            consume(TokenType.APERTURA, "Se esperaba '(' después de 'finally'");
-            
-            ASTNode finallyBody = parseStatementList();
-            if (finallyBody != null) {
-                tryCatch.addChild(finallyBody);
-            }
-            
-            consume(TokenType.CIERRE, "Se esperaba ')' para cerrar el cuerpo del finally");
+            return parseBody(tryCatch, "Se esperaba '(' después de 'finally'",
+                    "Se esperaba ')' para cerrar el cuerpo del finally", null);
         }
-        
         return tryCatch;
     }
     
@@ -554,7 +967,7 @@ public class Parser {
      * THROW_STATEMENT ::= "throw" EXPRESSION ";"
      */
     private ASTNode parseThrowStatement() {
-        ASTNode throwStmt = new ASTNode(ASTNode.NodeType.THROW_STATEMENT);
+        ASTNode throwStmt = node(ASTNode.NodeType.THROW_STATEMENT);
         
         // 'throw' already consumed
         ASTNode expr = parseExpression();
@@ -571,7 +984,7 @@ public class Parser {
      * BREAK_STATEMENT ::= "break" ";"
      */
     private ASTNode parseBreakStatement() {
-        ASTNode breakStmt = new ASTNode(ASTNode.NodeType.BREAK_STATEMENT, previous());
+        ASTNode breakStmt = node(ASTNode.NodeType.BREAK_STATEMENT, previous());
         consume(TokenType.PUNTO_Y_COMA, "Se esperaba ';' después de break");
         return breakStmt;
     }
@@ -580,7 +993,7 @@ public class Parser {
      * CONTINUE_STATEMENT ::= "continue" ";"
      */
     private ASTNode parseContinueStatement() {
-        ASTNode continueStmt = new ASTNode(ASTNode.NodeType.CONTINUE_STATEMENT, previous());
+        ASTNode continueStmt = node(ASTNode.NodeType.CONTINUE_STATEMENT, previous());
         consume(TokenType.PUNTO_Y_COMA, "Se esperaba ';' después de continue");
         return continueStmt;
     }
@@ -589,7 +1002,7 @@ public class Parser {
      * RETURN_STATEMENT ::= "return" (EXPRESSION)? ";"
      */
     private ASTNode parseReturnStatement() {
-        ASTNode returnStmt = new ASTNode(ASTNode.NodeType.RETURN_STATEMENT, previous());
+        ASTNode returnStmt = node(ASTNode.NodeType.RETURN_STATEMENT, previous());
         
         // Optional return value
         if (!check(TokenType.PUNTO_Y_COMA)) {
@@ -607,7 +1020,7 @@ public class Parser {
      * PRINT_STATEMENT ::= "print" "[" EXPRESSION_LIST "]"
      */
     private ASTNode parsePrintStatement() {
-        ASTNode printStmt = new ASTNode(ASTNode.NodeType.FUNCTION_CALL, previous());
+        ASTNode printStmt = node(ASTNode.NodeType.FUNCTION_CALL, previous());
         
         consume(TokenType.AGRUPADOR, "[", "Se esperaba '[' después de 'print'");
         
@@ -626,11 +1039,11 @@ public class Parser {
      * INPUT_STATEMENT ::= "input" IDENTIFIER
      */
     private ASTNode parseInputStatement() {
-        ASTNode inputStmt = new ASTNode(ASTNode.NodeType.FUNCTION_CALL, previous());
+        ASTNode inputStmt = node(ASTNode.NodeType.FUNCTION_CALL, previous());
         
         Token varName = consume(TokenType.IDENTIFICADOR, "Se esperaba nombre de variable después de 'input'");
         if (varName != null) {
-            inputStmt.addChild(new ASTNode(ASTNode.NodeType.IDENTIFIER, varName));
+            inputStmt.addChild(node(ASTNode.NodeType.IDENTIFIER, varName));
         }
         
         consume(TokenType.PUNTO_Y_COMA, "Se esperaba ';' después de la instrucción input");
@@ -651,9 +1064,9 @@ public class Parser {
      * EXPRESSION_LIST ::= EXPRESSION ("," EXPRESSION)*
      */
     private ASTNode parseExpressionList() {
-        ASTNode list = new ASTNode(ASTNode.NodeType.ARGUMENT_LIST);
+        ASTNode list = node(ASTNode.NodeType.ARGUMENT_LIST);
         
-        if (check(TokenType.AGRUPADOR) && peek().getLexeme().equals("]")) {
+        if (check(TokenType.AGRUPADOR, "]")) {
             return list; // Empty list
         }
         
@@ -673,75 +1086,68 @@ public class Parser {
     }
     
     /**
-     * EXPRESSION ::= TERM (("+" | "-" | "==" | "!=" | "<" | ">" | "<=" | ">=") TERM)*
+     * EXPRESSION ::= FACTOR (BINARY_OPERATOR FACTOR)*
+     * 
+     * Parsed by precedence climbing with the binding powers in
+     * BINDING_POWER, lowest first: "||", "&&", comparisons, "+" "-",
+     * "*" "/". All binary operators are left associative.
      */
     private ASTNode parseExpression() {
-        ASTNode left = parseTerm();
-        
-        while (match(TokenType.OPERADOR_ARITMETICO, "+") || 
-               match(TokenType.OPERADOR_ARITMETICO, "-") ||
-               match(TokenType.OPERADOR_COMPARACION, "==") ||
-               match(TokenType.OPERADOR_COMPARACION, "!=") ||
-               match(TokenType.OPERADOR_COMPARACION, "<") ||
-               match(TokenType.OPERADOR_COMPARACION, ">") ||
-               match(TokenType.OPERADOR_COMPARACION, "<=") ||
-               match(TokenType.OPERADOR_COMPARACION, ">=") ||
-               match(TokenType.OPERADOR_LOGICO, "&&") ||
-               match(TokenType.OPERADOR_LOGICO, "||")) {
-            Token operator = previous();
-            ASTNode right = parseTerm();
-            
-            ASTNode binaryOp = new ASTNode(ASTNode.NodeType.EXPRESSION, operator);
-            if (left != null) binaryOp.addChild(left);
-            if (right != null) binaryOp.addChild(right);
-            left = binaryOp;
+        if (listener == null || inExpression) {
+            return parseExpression(1);
         }
-        
-        return left;
+        inExpression = true;
+        ASTNode expression = parseExpression(1);
+        inExpression = false;
+        if (expression != null) {
+            expression.walk(listener);
+        }
+        return expression;
     }
     
     /**
-     * TERM ::= FACTOR (("*" | "/") FACTOR)*
+     * Expression made of operators that bind at least as tightly as minPower
      */
-    private ASTNode parseTerm() {
+    private ASTNode parseExpression(int minPower) {
+        if (iterative || depth >= MAX_RECURSION_DEPTH) {
+            return parseExpressionIteratively(minPower, false);
+        }
+        depth++;
         ASTNode left = parseFactor();
         
-        while (match(TokenType.OPERADOR_ARITMETICO, "*") || 
-               match(TokenType.OPERADOR_ARITMETICO, "/")) {
-            Token operator = previous();
-            ASTNode right = parseFactor();
-            
-            ASTNode binaryOp = new ASTNode(ASTNode.NodeType.TERM, operator);
-            if (left != null) binaryOp.addChild(left);
-            if (right != null) binaryOp.addChild(right);
-            left = binaryOp;
+        while (!isAtEnd()) {
+            int operator = tokens.operator(current);
+            int power = BINDING_POWER[operator];
+            if (power < minPower) break;
+            advance();
+            Token operatorToken = previous();
+            ASTNode right = parseExpression(power + 1);
+            left = binary(operatorToken, power, left, right);
         }
         
+        depth--;
         return left;
     }
     
+    private ASTNode binary(Token operator, int power, ASTNode left, ASTNode right) {
+        // "*" and "/" keep their TERM nodes
+        ASTNode binaryOp = node(power == MULTIPLICATIVE
+                ? ASTNode.NodeType.TERM : ASTNode.NodeType.EXPRESSION, operator);
+        if (left != null) binaryOp.addChild(left);
+        if (right != null) binaryOp.addChild(right);
+        return binaryOp;
+    }
+    
     /**
      * FACTOR ::= IDENTIFIER | NUMBER | STRING | CHAR | BOOL | "(" EXPRESSION ")" | "!" FACTOR
      */
     private ASTNode parseFactor() {
-        // Boolean literals
-        if (match(TokenType.BOOLEANO, "true") || match(TokenType.BOOLEANO, "false")) {
-            return new ASTNode(ASTNode.NodeType.BOOL_LITERAL, previous());
+        ASTNode literal = parseLiteral();
+        if (literal != null) {
+            return literal;
         }
-        
-        // String literal
-        if (check(TokenType.LITERAL_CADENA)) {
-            return new ASTNode(ASTNode.NodeType.STRING_LITERAL, advance());
-        }
-        
-        // Number literal
-        if (check(TokenType.LITERAL_NUMERICO) || check(TokenType.ENTERO) || check(TokenType.DECIMAL)) {
-            return new ASTNode(ASTNode.NodeType.NUMBER_LITERAL, advance());
-        }
-        
-        // Identifier
-        if (check(TokenType.IDENTIFICADOR)) {
-            return new ASTNode(ASTNode.NodeType.IDENTIFIER, advance());
+        if (iterative || depth >= MAX_RECURSION_DEPTH) {
+            return parseExpressionIteratively(0, true);
         }
         
         // Parenthesized expression
@@ -752,9 +1158,12 @@ public class Parser {
         }
         
         // Negation
-        if (match(TokenType.OPERADOR_LOGICO, "!")) {
+        if (!isAtEnd() && tokens.operator(current) == Operator.NOT) {
+            advance();
+            depth++;
             ASTNode factor = parseFactor();
-            ASTNode negation = new ASTNode(ASTNode.NodeType.EXPRESSION, previous());
+            depth--;
+            ASTNode negation = node(ASTNode.NodeType.EXPRESSION, previous());
             if (factor != null) negation.addChild(factor);
             return negation;
         }
@@ -763,38 +1172,180 @@ public class Parser {
         return null;
     }
     
+    /**
+     * parseExpression(minPower), or parseFactor() if factor is set, with an
+     * explicit stack of pending parentheses, negations and operators
+     * instead of recursive calls; builds the same tree and errors
+     */
+    private ASTNode parseExpressionIteratively(int minPower, boolean factor) {
+        ArrayDeque<ExpressionFrame> stack = new ArrayDeque<>();
+        if (!factor) {
+            stack.push(new ExpressionFrame(ExpressionFrame.OPERAND, minPower));
+        }
+        ASTNode value = null;
+        boolean needFactor = true;
+        
+        while (true) {
+            if (needFactor) {
+                value = parseLiteral();
+                if (value == null) {
+                    if (match(TokenType.APERTURA, "(")) {
+                        stack.push(new ExpressionFrame(ExpressionFrame.PARENTHESES, 0));
+                        stack.push(new ExpressionFrame(ExpressionFrame.OPERAND, 1));
+                        continue;
+                    }
+                    if (!isAtEnd() && tokens.operator(current) == Operator.NOT) {
+                        advance();
+                        stack.push(new ExpressionFrame(ExpressionFrame.NEGATION, 0));
+                        continue;
+                    }
+                    error("Se esperaba una expresión", peek());
+                }
+                needFactor = false;
+            }
+            
+            // Hand value to the innermost pending frame
+            ExpressionFrame frame = stack.peek();
+            if (frame == null) {
+                return value;
+            }
+            if (frame.kind == ExpressionFrame.PARENTHESES) {
+                stack.pop();
+                consume(TokenType.CIERRE, "Se esperaba ')' después de la expresión");
+                continue;
+            }
+            if (frame.kind == ExpressionFrame.NEGATION) {
+                stack.pop();
+                ASTNode negation = node(ASTNode.NodeType.EXPRESSION, previous());
+                if (value != null) negation.addChild(value);
+                value = negation;
+                continue;
+            }
+            
+            // value is the left operand, or the right one of frame.operator
+            frame.left = frame.operator == null ? value : binary(frame.operator, frame.power, frame.left, value);
+            frame.operator = null;
+            if (!isAtEnd()) {
+                int power = BINDING_POWER[tokens.operator(current)];
+                if (power >= frame.minPower) {
+                    advance();
+                    frame.operator = previous();
+                    frame.power = power;
+                    stack.push(new ExpressionFrame(ExpressionFrame.OPERAND, power + 1));
+                    needFactor = true;
+                    continue;
+                }
+            }
+            stack.pop();
+            value = frame.left;
+        }
+    }
+    
+    /**
+     * Literal or identifier at the current token, or null without
+     * consuming anything
+     */
+    private ASTNode parseLiteral() {
+        // Boolean literals
+        if (match(TokenType.BOOLEANO, "true") || match(TokenType.BOOLEANO, "false")) {
+            return node(ASTNode.NodeType.BOOL_LITERAL, previous());
+        }
+        
+        // String literal
+        if (check(TokenType.LITERAL_CADENA)) {
+            advance();
+            return node(ASTNode.NodeType.STRING_LITERAL, previous());
+        }
+        
+        // Number literal
+        if (check(TokenType.LITERAL_NUMERICO) || check(TokenType.ENTERO) || check(TokenType.DECIMAL)) {
+            advance();
+            return node(ASTNode.NodeType.NUMBER_LITERAL, previous());
+        }
+        
+        // Identifier
+        if (check(TokenType.IDENTIFICADOR)) {
+            advance();
+            return node(ASTNode.NodeType.IDENTIFIER, previous());
+        }
+        
+        return null;
+    }
+    
     /**
      * Parse type token
      */
     private Token parseType() {
-        if (isType(peek())) {
-            return advance();
+        if (isType(current)) {
+            advance();
+            return previous();
         }
         error("Se esperaba declaración de tipo", peek());
         return null;
     }
     
     /**
-     * Check if token is a type keyword
+     * Check if the token at index is a type keyword
      */
-    private boolean isType(Token token) {
-        if (token == null) return false;
-        // Check for standard data types
-        if (token.getType() == TokenType.TIPO_DATO ||      // number
-            token.getType() == TokenType.TIPO_ENTERO ||    // int
-            token.getType() == TokenType.TIPO_FLOTANTE ||  // float, double
-            token.getType() == TokenType.TIPO_CADENA_TIPO || // string
-            token.getType() == TokenType.TIPO_CARACTER ||  // char
-            token.getType() == TokenType.TIPO_BOOLEANO ||  // bool
-            token.getType() == TokenType.TIPO_ARREGLO) {   // array
-            return true;
+    private boolean isType(int index) {
+        // Data types and "void"
+        return Lookahead.kind(tokens, index) == Lookahead.TYPE;
+    }
+    
+    // ==================== ERROR RECOVERY ====================
+    
+    /**
+     * Panic-mode recovery after an error in a statement or member: skips
+     * tokens up to a synchronization point and leaves panic mode. The sync
+     * set is the FOLLOW set of the statement (or member) in a list: a ";"
+     * that ends it (consumed), the ")" that closes the list (not consumed)
+     * or a keyword in FIRST of the next statement (or member). Parentheses
+     * opened while skipping are skipped as a whole, so only tokens at the
+     * depth of the list are sync points.
+     * @param start index where the failed statement or member started
+     */
+    private void synchronize(boolean member, int start) {
+        int depth = 0;
+        while (!isAtEnd()) {
+            if (depth == 0) {
+                if (current > start && tokens.type(current - 1) == TokenType.PUNTO_Y_COMA) break;
+                if (check(TokenType.CIERRE)) break;
+                if (member ? startsMember(current) : startsStatement(current)) break;
+            }
+            TokenType type = tokens.type(current);
+            if (type == TokenType.APERTURA) {
+                depth++;
+            } else if (type == TokenType.CIERRE) {
+                depth--;
+            }
+            advance();
         }
-        // Check for void as PALABRA_RESERVADA
-        if (token.getType() == TokenType.PALABRA_RESERVADA && 
-            token.getLexeme().equals("void")) {
-            return true;
+        panicMode = false;
+    }
+    
+    /**
+     * Skips a token that cannot start a statement or member. A "(" is left
+     * for synchronize(), which skips the whole parenthesized group.
+     */
+    private void skipUnexpected() {
+        if (!check(TokenType.APERTURA)) {
+            advance();
         }
-        return false;
+    }
+    
+    /**
+     * Check if the token at index is in FIRST(STATEMENT), leaving out
+     * identifiers, which also appear inside statements
+     */
+    private boolean startsStatement(int index) {
+        return STATEMENT_FIRST[Lookahead.kind(tokens, index)];
+    }
+    
+    /**
+     * Check if the token at index is in FIRST(MEMBER): a type or an access modifier
+     */
+    private boolean startsMember(int index) {
+        return MEMBER_FIRST[Lookahead.kind(tokens, index)];
     }
     
     // ==================== UTILITY METHODS ====================
@@ -809,32 +1360,29 @@ public class Parser {
     
     private boolean check(TokenType type) {
         if (isAtEnd()) return false;
-        return peek().getType() == type;
+        return tokens.type(current) == type;
     }
     
     private boolean check(TokenType type, String lexeme) {
         if (isAtEnd()) return false;
-        Token token = peek();
-        return token.getType() == type && token.getLexeme().equals(lexeme);
+        return tokens.type(current) == type && tokens.lexemeEquals(current, lexeme);
     }
     
-    private Token advance() {
+    private void advance() {
         if (!isAtEnd()) current++;
-        return previous();
     }
     
     private boolean isAtEnd() {
-        return current >= tokens.size();
+        return aborted || !tokens.has(current);
     }
     
     private Token peek() {
-        if (current >= tokens.size()) return tokens.get(tokens.size() - 1);
-        return tokens.get(current);
+        return tokens.token(current);
     }
     
     private Token previous() {
-        if (current == 0) return tokens.get(0);
-        return tokens.get(current - 1);
+        if (current == 0) return tokens.token(0);
+        return tokens.token(current - 1);
     }
     
     private Token consume(TokenType type) {
@@ -842,24 +1390,118 @@ public class Parser {
     }
     
     private Token consume(TokenType type, String errorMessage) {
-        if (check(type)) return advance();
+        if (check(type)) {
+            advance();
+            return previous();
+        }
         error(errorMessage, peek());
         return null;
     }
     
     private Token consume(TokenType type, String lexeme, String errorMessage) {
-        if (check(type, lexeme)) return advance();
+        if (check(type, lexeme)) {
+            advance();
+            return previous();
+        }
         error(errorMessage, peek());
         return null;
     }
     
+    /**
+     * Reports an error unless the parser is recovering from an earlier one
+     * (a cascade of the same mistake); the error past maxErrors stops the parse
+     */
     private void error(String message, Token token) {
-        String found = token != null ? token.getLexeme() : "EOF";
-        int line = token != null ? token.getLine() : 0;
-        int column = token != null ? token.getColumn() : 0;
-        
-        SyntaxError error = new SyntaxError(message, line, column, "ver mensaje de error", found);
-        errors.add(error);
+        if (panicMode || aborted) {
+            return;
+        }
+        panicMode = true;
+        if (errors.size() == maxErrors) {
+            message = TOO_MANY_ERRORS;
+            aborted = true;
+        }
+        if (token != null) {
+            errors.add(new SyntaxError(message, token, "ver mensaje de error", token.getLexeme()));
+        } else {
+            errors.add(new SyntaxError(message, 0, 0, "ver mensaje de error", "EOF"));
+        }
+    }
+    
+    /**
+     * New tree node, or the shared placeholder while recognizing. With a
+     * listener, outside expressions, the node is reported instead; a node
+     * with children stays open until exitTo() closes it.
+     */
+    private ASTNode node(ASTNode.NodeType type) {
+        return node(type, null);
+    }
+    
+    private ASTNode node(ASTNode.NodeType type, Token token) {
+        if (listener != null && !inExpression) {
+            if (type.isTerminal()) {
+                listener.terminal(type, token);
+            } else {
+                if (openCount == openTypes.length) {
+                    openTypes = Arrays.copyOf(openTypes, openCount * 2);
+                    openTokens = Arrays.copyOf(openTokens, openCount * 2);
+                }
+                openTypes[openCount] = type;
+                openTokens[openCount++] = token;
+                listener.enterNode(type, token);
+            }
+            return RECOGNIZED;
+        }
+        return recognizing ? RECOGNIZED : new ASTNode(type, token);
+    }
+    
+    /**
+     * Reports the end of the open nodes, innermost first, until only the
+     * first open ones are left. Called where a node is finished: after a
+     * statement or member, at the end of a block, after the clauses of a
+     * for, and at the end of the parse.
+     */
+    private void exitTo(int open) {
+        if (listener == null) return;
+        while (openCount > open) {
+            openCount--;
+            listener.exitNode(openTypes[openCount], openTokens[openCount]);
+            openTokens[openCount] = null;
+        }
+    }
+    
+    // ==================== INCREMENTAL REPARSING ====================
+    
+    /**
+     * Parses the statement list of a block whose "(" is at openIndex.
+     * Used by IncrementalParser; check getPosition() afterwards to see
+     * where the list ended.
+     */
+    ASTNode parseStatementListAt(int openIndex) {
+        current = openIndex + 1;
+        return parseStatementList();
+    }
+    
+    /**
+     * Parses the member list of the structure whose "(" is at openIndex
+     */
+    ASTNode parseMemberListAt(int openIndex) {
+        current = openIndex + 1;
+        return parseMemberList();
+    }
+    
+    /**
+     * Parses the structure member starting at index
+     */
+    ASTNode parseMemberAt(int index) {
+        current = index;
+        return parseMember();
+    }
+    
+    /**
+     * Index of the next token to parse
+     */
+    int getPosition() {
+        return current;
     }
     
     public boolean hasErrors() {
@@ -873,6 +1515,135 @@ public class Parser {
     public ASTNode getAST() {
         return ast;
     }
+    
+    /**
+     * A block being parsed by parseStatementListIteratively(): the list of
+     * its statements, and the compound statement it belongs to
+     */
+    private static final class BlockFrame {
+        final ASTNode statements;
+        final int openNodes;            // open listener nodes, the block's list included
+        final Token open;               // "(" of the block, null if missing
+        final String closeMessage;
+        final int errorsBefore;
+        final ASTNode owner;            // gets the block as its next child
+        final Supplier<ASTNode> rest;   // continues the owner after the block, or null
+        int statementStart;             // first token of the statement being parsed
+        
+        BlockFrame(ASTNode statements, int openNodes, Token open, String closeMessage, int errorsBefore,
+                ASTNode owner, Supplier<ASTNode> rest) {
+            this.statements = statements;
+            this.openNodes = openNodes;
+            this.open = open;
+            this.closeMessage = closeMessage;
+            this.errorsBefore = errorsBefore;
+            this.owner = owner;
+            this.rest = rest;
+        }
+    }
+    
+    /**
+     * A call of parseExpression() or parseFactor() waiting for a sub-result,
+     * in parseExpressionIteratively()
+     */
+    private static final class ExpressionFrame {
+        static final int OPERAND = 0;       // parseExpression(minPower): waits for an operand
+        static final int PARENTHESES = 1;   // "(" EXPRESSION: waits for the expression
+        static final int NEGATION = 2;      // "!" FACTOR: waits for the factor
+        
+        final int kind;
+        final int minPower;
+        ASTNode left;
+        Token operator;                     // binary operator waiting for its right operand
+        int power;
+        
+        ExpressionFrame(int kind, int minPower) {
+            this.kind = kind;
+            this.minPower = minPower;
+        }
+    }
+    
+    /**
+     * Stands for every node built while recognizing. It keeps no children,
+     * range or error count, so one instance serves every parse and thread;
+     * the parser only tells nodes from null, never looks into them.
+     */
+    private static final class Placeholder extends ASTNode {
+        Placeholder() {
+            super(ASTNode.NodeType.PROGRAM);
+        }
+        
+        @Override
+        public void addChild(ASTNode child) {
+        }
+        
+        @Override
+        void setRange(Token first, Token last) {
+        }
+        
+        @Override
+        void setErrorCount(int errorCount) {
+        }
+    }
+    
+    /**
+     * Cursor over a token list, or over the tokens pulled so far from a stream
+     */
+    private static final class ListCursor implements TokenCursor {
+        private final List<Token> streamed = new ArrayList<>();
+        private List<Token> tokens;
+        private Iterator<Token> stream;
+        
+        ListCursor(List<Token> tokens, Iterator<Token> stream) {
+            reset(tokens, stream);
+        }
+        
+        final void reset(List<Token> tokens, Iterator<Token> stream) {
+            streamed.clear();
+            this.tokens = stream != null ? streamed : tokens;
+            this.stream = stream;
+        }
+        
+        /**
+         * Pulls tokens from the stream (if any) until index is loaded
+         */
+        @Override
+        public boolean has(int index) {
+            while (index >= tokens.size() && stream != null) {
+                Token token = stream.hasNext() ? stream.next() : null;
+                if (token == null || token.getType() == TokenType.EOF) {
+                    stream = null;
+                } else {
+                    tokens.add(token);
+                }
+            }
+            return index < tokens.size();
+        }
+        
+        @Override
+        public TokenType type(int index) {
+            return tokens.get(index).getType();
+        }
+        
+        @Override
+        public boolean lexemeEquals(int index, String text) {
+            return tokens.get(index).lexemeEquals(text);
+        }
+        
+        @Override
+        public int operator(int index) {
+            return tokens.get(index).getOperator();
+        }
+        
+        @Override
+        public Token token(int index) {
+            if (!has(index)) {
+                // Empty input, or a stream ending at a lexical error
+                return tokens.isEmpty() ? null : tokens.get(tokens.size() - 1);
+            }
+            return tokens.get(index);
+        }
+    }
 }
 
 /**
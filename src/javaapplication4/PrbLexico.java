@@ -5,6 +5,9 @@
 package javaapplication4;
 
 import javax.swing.table.DefaultTableModel;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
 import java.util.List;
 // Uncomment these imports after adding RSyntaxTextArea library to project:
 // import org.fife.ui.rsyntaxtextarea.RSyntaxTextArea;
@@ -346,12 +349,15 @@ public class PrbLexico extends javax.swing.JFrame
         mt.setRowCount(0);
         BtnSintactico.setEnabled(true);
         
+        // Read the editor text once, without copying it into a String
+        Segment text = documentText();
+        
         // Save the input text
-        Archivos.guardarArchivo(TxAnalisis.getText());
+        Archivos.guardarArchivo(text);
         
         // Create scanner and analyze the text
         Analisis_Lexico analyzer = new Analisis_Lexico();
-        java.util.List<Token> tokens = analyzer.scan(TxAnalisis.getText());
+        java.util.List<Token> tokens = analyzer.scan(text);
         
         // Process tokens and populate table
         StringBuilder texto = new StringBuilder();
@@ -399,20 +405,13 @@ public class PrbLexico extends javax.swing.JFrame
         // Clear previous syntax error results
         syntaxErrorModel.setRowCount(0);
         
-        // First run lexical analysis to get tokens
-        Analisis_Lexico analyzer = new Analisis_Lexico();
-        java.util.List<Token> tokens = analyzer.scan(TxAnalisis.getText());
+        // Lexical and syntactic analysis run at the same time; a lexical
+        // error stops both
+        Analisis_Sintactico sintactico = new Analisis_Sintactico();
+        boolean success = sintactico.analizarConcurrente(documentText());
         
         // Check if there are lexical errors
-        boolean hasLexicalErrors = false;
-        for (Token token : tokens) {
-            if (token.isError()) {
-                hasLexicalErrors = true;
-                break;
-            }
-        }
-        
-        if (hasLexicalErrors) {
+        if (sintactico.getErrorLexico() != null) {
             syntaxErrorModel.addRow(new Object[]{
                 "-", "-", 
                 "Corrija los errores léxicos antes del análisis sintáctico", 
@@ -422,10 +421,6 @@ public class PrbLexico extends javax.swing.JFrame
             return;
         }
         
-        // Run syntactic analysis
-        Analisis_Sintactico sintactico = new Analisis_Sintactico();
-        boolean success = sintactico.analizar(tokens);
-        
         if (success) {
             // Show checkmark and clear any previous errors
             syntaxErrorModel.setRowCount(0);
@@ -450,6 +445,21 @@ public class PrbLexico extends javax.swing.JFrame
         }
     }
 
+    /**
+     * Text of the editor as a Segment over the document's own storage;
+     * the document only copies it if its gap splits the text
+     */
+    private Segment documentText() {
+        Document document = TxAnalisis.getDocument();
+        Segment text = new Segment();
+        try {
+            document.getText(0, document.getLength(), text);
+        } catch (BadLocationException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return text;
+    }
+
     /**
      * @param args the command line arguments
      */
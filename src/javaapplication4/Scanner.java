@@ -4,265 +4,725 @@
  */
 package javaapplication4;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import javax.swing.text.Segment;
 
 /**
  * A proper lexical scanner that performs character-by-character scanning
  * with a state machine for accurate token recognition.
+ * 
+ * Characters are read through a fixed-size sliding buffer that only keeps
+ * the token being scanned, so the same scanner works over an in-memory
+ * CharSequence or streams from a Reader / ReadableByteChannel without
+ * holding the text. A Swing Segment is scanned in place, without copying
+ * its chars. Lines and columns are not counted while scanning: tokens keep
+ * their offset and look their position up in the LineMap of the input,
+ * which keeps every line start, so a stream still needs memory in
+ * proportion to its number of lines. Offsets are ints: a stream longer
+ * than MAX_INPUT_LENGTH chars fails instead of wrapping around.
  * @author Gerardo
  */
 public class Scanner {
     
-    private final String source;
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MIN_CHUNK_SIZE = 1 << 16;   // chars per chunk in a parallel scan
+    
+    // Powers of ten that are exact in a double, for decoding decimal literals
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20,
+        1e21, 1e22
+    };
+    
+    /**
+     * Longest input a scanner accepts; the lookahead of one char past the
+     * current one must still fit in an int offset
+     */
+    public static final int MAX_INPUT_LENGTH = Integer.MAX_VALUE - 1;
+    
+    static final String TOO_MANY_ERRORS = "Too many lexical errors, scanning stopped";
+    static final String UNEXPECTED_CHARACTERS = "Unexpected characters";
+    
+    // Error messages for ASCII characters, built once and shared by every token
+    private static final String[] UNEXPECTED_CHARACTER = new String[128];
+    private static final String[] INVALID_AFTER_IDENTIFIER = new String[128];
+    
+    private CharSequence source;    // null when streaming from a Reader
+    private final Reader reader;    // null when scanning an in-memory source
     private final List<Token> tokens;
+    private Token pending;
+    private TokenBuffer target;     // set while scanning into a TokenBuffer
+    private Checkpoints checkpoints;
+    private final LineMap lineMap;
+    private LexerStatistics statistics;
+    private boolean statisticsStale;   // only part of the source was rescanned
+    
+    // Source range re-lexed by the last applyEdit(): tokens before relexStart
+    // were kept as they were, tokens from relexEnd on were kept and moved
+    private int relexStart;
+    private int relexEnd;
+    
+    // Sliding window over the input: buffer[0] holds the char at bufferStart
+    private char[] buffer;
+    private int bufferStart;
+    private int bufferEnd;
+    private boolean exhausted;
+    private boolean wholeInput;     // buffer is the array of a Segment source
+    
     private int start;
     private int current;
-    private int line;
-    private int column;
-    private int startColumn;
-    
-    // Reserved words mapping
-    private static final Map<String, TokenType> reservedWords;
-    private static final Map<String, TokenType> operators;
-    
-    static {
-        reservedWords = new HashMap<>();
-        // Reserved words (English)
-        reservedWords.put("structure", TokenType.PALABRA_RESERVADA);
-        reservedWords.put("public", TokenType.PALABRA_RESERVADA);
-        reservedWords.put("const", TokenType.PALABRA_RESERVADA);
-        reservedWords.put("void", TokenType.PALABRA_RESERVADA);
-        reservedWords.put("main", TokenType.PALABRA_RESERVADA);
-
-        // Functions (English)
-        reservedWords.put("print", TokenType.FUNCION_SALIDA);
-        reservedWords.put("input", TokenType.FUNCION_ENTRADA);
-
-        // Data types (English)
-        reservedWords.put("number", TokenType.TIPO_DATO);
-        
-        // Control flow - Conditionals
-        reservedWords.put("if", TokenType.CONDICIONAL);
-        reservedWords.put("else", TokenType.CONDICIONAL);
-        reservedWords.put("elseif", TokenType.CONDICIONAL);
-        
-        // Control flow - Loops
-        reservedWords.put("while", TokenType.BUCLE);
-        reservedWords.put("for", TokenType.BUCLE);
-        
-        // Control flow - Jump statements
-        reservedWords.put("break", TokenType.SALTO);
-        reservedWords.put("continue", TokenType.SALTO);
-        reservedWords.put("return", TokenType.SALTO);
-        
-        // Boolean literals
-        reservedWords.put("true", TokenType.BOOLEANO);
-        reservedWords.put("false", TokenType.BOOLEANO);
-        
-        // Specific Data Types
-        reservedWords.put("int", TokenType.TIPO_ENTERO);
-        reservedWords.put("float", TokenType.TIPO_FLOTANTE);
-        reservedWords.put("double", TokenType.TIPO_FLOTANTE);
-        reservedWords.put("string", TokenType.TIPO_CADENA_TIPO);
-        reservedWords.put("char", TokenType.TIPO_CARACTER);
-        reservedWords.put("bool", TokenType.TIPO_BOOLEANO);
-        reservedWords.put("array", TokenType.TIPO_ARREGLO);
-        
-        // Exception Handling
-        reservedWords.put("try", TokenType.EXCEPCION);
-        reservedWords.put("catch", TokenType.EXCEPCION);
-        reservedWords.put("throw", TokenType.EXCEPCION);
-        reservedWords.put("finally", TokenType.EXCEPCION);
-        
-        // Operators lookup
-        operators = new HashMap<>();
-        operators.put("=", TokenType.OPERADOR_ASIGNACION);
-        operators.put("+", TokenType.OPERADOR_ARITMETICO);
-        operators.put("-", TokenType.OPERADOR_ARITMETICO);
-        operators.put("*", TokenType.OPERADOR_ARITMETICO);
-        operators.put("/", TokenType.OPERADOR_ARITMETICO);
-        operators.put("==", TokenType.OPERADOR_COMPARACION);
-        operators.put("!=", TokenType.OPERADOR_COMPARACION);
-        operators.put("<", TokenType.OPERADOR_COMPARACION);
-        operators.put(">", TokenType.OPERADOR_COMPARACION);
-        operators.put("<=", TokenType.OPERADOR_COMPARACION);
-        operators.put(">=", TokenType.OPERADOR_COMPARACION);
-        operators.put("&&", TokenType.OPERADOR_LOGICO);
-        operators.put("||", TokenType.OPERADOR_LOGICO);
-        operators.put("!", TokenType.OPERADOR_LOGICO);
-    }
-    
-    public Scanner(String source) {
-        this.source = source;
+    
+    // Error budget: unlimited and one token per bad character by default
+    private int maxErrors = Integer.MAX_VALUE;
+    private boolean coalesceErrors;
+    private int errorCount;
+    private boolean aborted;
+    
+    /**
+     * Scanner over text in memory. A javax.swing.text.Segment (for example
+     * from Document.getText(offset, length, segment)) is read directly from
+     * its array and must not change while it is being scanned.
+     */
+    public Scanner(CharSequence source) {
+        this(source, null, LineMap.of(source));
+        this.checkpoints = new Checkpoints();
+    }
+    
+    /**
+     * Streaming scanner: characters are pulled from the reader on demand.
+     * Use nextToken() or iterator() to consume tokens as they are recognized.
+     * Reading past MAX_INPUT_LENGTH chars throws an IllegalStateException.
+     */
+    public Scanner(Reader reader) {
+        this(null, reader, new LineMap());
+    }
+    
+    /**
+     * Streaming scanner over UTF-8 encoded bytes. Malformed bytes become
+     * U+FFFD, which the scanner reports as ERROR tokens, as with mapFile().
+     */
+    public Scanner(ReadableByteChannel channel) {
+        this(Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE), -1));
+    }
+    
+    /**
+     * Streaming scanner over a UTF-8 file mapped into memory. The file is
+     * decoded directly from the mapped bytes into the scan buffer, without
+     * first being read into a String. A file of more than MAX_INPUT_LENGTH
+     * chars fails when the scan gets there, like any other stream.
+     */
+    public static Scanner mapFile(Path file) throws IOException {
+        return new Scanner(new MappedUtf8Reader(file));
+    }
+    
+    private Scanner(CharSequence source, Reader reader, LineMap lineMap) {
+        this.reader = reader;
+        this.lineMap = lineMap;
+        this.statistics = new LexerStatistics(lineMap);
         this.tokens = new ArrayList<>();
-        this.start = 0;
-        this.current = 0;
-        this.line = 1;
-        this.column = 1;
-        this.startColumn = 1;
+        this.pending = null;
+        this.target = null;
+        this.checkpoints = null;
+        if (source != null) {
+            setSource(source);
+        } else {
+            this.buffer = new char[BUFFER_SIZE];
+            this.bufferStart = 0;
+            this.bufferEnd = 0;
+            this.exhausted = false;
+            this.wholeInput = false;
+            this.start = 0;
+            this.current = 0;
+        }
     }
     
-    public List<Token> scanTokens() {
-        while (!isAtEnd()) {
-            start = current;
-            startColumn = column;
-            scanToken();
+    /**
+     * Starts scanning an in-memory source from its first character
+     */
+    private void setSource(CharSequence source) {
+        this.source = source;
+        if (source instanceof Segment) {
+            // The segment's array is the whole input: no window to slide
+            Segment segment = (Segment) source;
+            buffer = segment.array;
+            bufferStart = -segment.offset;
+            bufferEnd = segment.count;
+            exhausted = true;
+            wholeInput = true;
+        } else {
+            if (buffer == null || wholeInput) {
+                buffer = new char[BUFFER_SIZE];   // never write into a segment's array
+            }
+            bufferStart = 0;
+            bufferEnd = 0;
+            exhausted = false;
+            wholeInput = false;
         }
-        
-        tokens.add(new Token("", TokenType.EOF, line, column));
+        start = 0;
+        current = 0;
+        errorCount = 0;
+        aborted = false;
+        statistics.clear();
+        statisticsStale = false;
+    }
+    
+    /**
+     * Limits the number of ERROR tokens of a scan. Once maxErrors errors
+     * have been reported, the next one becomes a single "too many errors"
+     * token and the scan ends there, as if the input had ended.
+     */
+    public void setMaxErrors(int maxErrors) {
+        if (maxErrors < 0) {
+            throw new IllegalArgumentException("maxErrors must not be negative: " + maxErrors);
+        }
+        this.maxErrors = maxErrors;
+    }
+    
+    /**
+     * When enabled, a run of consecutive characters that cannot start any
+     * token is reported as one ERROR token instead of one per character
+     */
+    public void setCoalesceErrors(boolean coalesceErrors) {
+        this.coalesceErrors = coalesceErrors;
+    }
+    
+    /**
+     * Number of ERROR tokens produced by the current scan
+     */
+    public int getErrorCount() {
+        return errorCount;
+    }
+    
+    /**
+     * Whether the scan stopped early because the error limit was reached
+     */
+    public boolean isAborted() {
+        return aborted;
+    }
+    
+    /**
+     * Statistics of what has been scanned so far, collected while scanning.
+     * After applyEdit() they are recounted over the whole source the next
+     * time they are asked for.
+     */
+    public LexerStatistics getStatistics() {
+        if (statisticsStale) {
+            Scanner fresh = withSameSettings();
+            fresh.scanBuffer();
+            statistics = fresh.statistics;
+            statistics.setCharacters(fresh.current);
+            statisticsStale = false;
+        } else if (current > statistics.getCharacters()) {
+            statistics.setCharacters(current);
+        }
+        return statistics;
+    }
+    
+    /**
+     * Scanner over the same source and line map with the same error
+     * settings, for scans that must give the same tokens as this one
+     */
+    private Scanner withSameSettings() {
+        Scanner scanner = new Scanner(source, null, lineMap);
+        scanner.maxErrors = maxErrors;
+        scanner.coalesceErrors = coalesceErrors;
+        return scanner;
+    }
+    
+    /**
+     * Prepares the scanner for another source, keeping its buffers. The
+     * token list and positions from the previous scan are reused, so they
+     * must not be used after this call.
+     */
+    public Scanner reset(CharSequence source) {
+        if (reader != null) {
+            throw new IllegalStateException("A streaming scanner cannot be reset");
+        }
+        setSource(source);
+        this.tokens.clear();
+        this.pending = null;
+        this.target = null;
+        this.checkpoints.size = 0;
+        this.lineMap.reset(source);
+        return this;
+    }
+    
+    public List<Token> scanTokens() {
+        Token token;
+        do {
+            token = nextToken();
+            tokens.add(token);
+        } while (token.getType() != TokenType.EOF);
         return tokens;
     }
     
-    private void scanToken() {
-        char c = advance();
-        
-        switch (c) {
-            // Single-character operators
-            case '+':
-            case '-':
-                addToken(operators.get(String.valueOf(c)));
-                break;
-            case '*':
-                addToken(TokenType.OPERADOR_ARITMETICO);
-                break;
-            case '/':
-                if (match('/')) {
-                    // Single-line comment, consume until end of line
-                    while (peek() != '\n' && !isAtEnd()) advance();
-                } else if (match('*')) {
-                    // Multi-line comment
-                    skipMultiLineComment();
-                } else {
-                    addToken(TokenType.OPERADOR_ARITMETICO);
-                }
+    /**
+     * Scans the whole in-memory source into a TokenBuffer, without creating
+     * a Token object or lexeme String per token
+     */
+    public TokenBuffer scanBuffer() {
+        if (source == null) {
+            throw new IllegalStateException("A TokenBuffer needs an in-memory source");
+        }
+        TokenBuffer buffer = new TokenBuffer(source, lineMap, source.length() / 8);
+        Checkpoints saved = checkpoints;
+        target = buffer;
+        checkpoints = null;
+        try {
+            while (!isAtEnd()) {
+                start = current;
+                scanToken();
+            }
+            buffer.add(TokenType.EOF, current, 0);
+            return buffer;
+        } finally {
+            target = null;
+            checkpoints = saved;
+        }
+    }
+    
+    /**
+     * Scans the in-memory source on several threads and returns the same
+     * tokens as scanTokens(). The source is split at line starts and every
+     * chunk is lexed on the common fork-join pool as if a line started there.
+     * A chunk that actually begins inside a string or a comment, which the
+     * previous chunk shows by ending somewhere else, is rescanned from where
+     * the previous one stopped, so the statistics of the chunks can simply
+     * be added up. Tokens only hold offsets, so
+     * their lines come out right no matter which chunk produced them.
+     */
+    public List<Token> scanTokensParallel() {
+        if (source == null) {
+            throw new IllegalStateException("Parallel scanning needs an in-memory source");
+        }
+        int[] bounds = chunkBounds();
+        if (bounds.length < 2 || current != 0 || maxErrors != Integer.MAX_VALUE) {
+            return scanTokens();
+        }
+
+        List<ForkJoinTask<Chunk>> tasks = new ArrayList<>(bounds.length);
+        for (int i = 0; i < bounds.length; i++) {
+            int from = bounds[i];
+            int limit = i + 1 < bounds.length ? bounds[i + 1] : Integer.MAX_VALUE;
+            tasks.add(ForkJoinPool.commonPool().submit(
+                    () -> withSameSettings().scanChunk(from, limit)));
+        }
+
+        // Position up to which the stitched tokens are known to be right
+        int position = 0;
+        Checkpoints stitched = new Checkpoints();
+        for (int i = 0; i < bounds.length; i++) {
+            Chunk chunk = tasks.get(i).join();
+            if (position >= chunk.end) {
+                continue;   // an earlier chunk already went past this one
+            }
+
+            if (chunk.from != position) {
+                // The chunk started inside a string or comment: its tokens and
+                // statistics are rescanned from where the previous one stopped
+                int limit = i + 1 < bounds.length ? bounds[i + 1] : Integer.MAX_VALUE;
+                chunk = scanChunk(position, limit);
+            }
+
+            tokens.addAll(chunk.tokens);
+            for (int m = 0; m < chunk.checkpoints.size; m++) {
+                stitched.add(chunk.checkpoints.offsets[m]);
+            }
+            statistics.add(chunk.statistics);
+            position = chunk.end;
+            if (chunk.atEnd) {
+                tokens.add(new Token("", TokenType.EOF, lineMap, position));
                 break;
-                
-            // Multi-character operators starting with =
-            case '=':
-                if (match('=')) {
-                    addToken(TokenType.OPERADOR_COMPARACION);
-                } else {
-                    addToken(TokenType.OPERADOR_ASIGNACION);
+            }
+        }
+
+        checkpoints = stitched;
+        errorCount = statistics.getErrorCount();
+        rewind(source.length());
+        exhausted = true;
+        return tokens;
+    }
+
+    /**
+     * Line starts where the source is split for parallel scanning
+     */
+    private int[] chunkBounds() {
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        int count = Math.min(parallelism * 4, source.length() / MIN_CHUNK_SIZE);
+        if (parallelism < 2 || count < 2) {
+            return new int[0];
+        }
+        int[] bounds = new int[count];
+        int size = 1;   // bounds[0] = 0
+        for (int i = 1; i < count; i++) {
+            int newline = indexOf(source, '\n', (int) ((long) source.length() * i / count));
+            if (newline < 0) break;
+            if (newline + 1 > bounds[size - 1] && newline + 1 < source.length()) {
+                bounds[size++] = newline + 1;
+            }
+        }
+        return Arrays.copyOf(bounds, size);
+    }
+
+    /**
+     * Scans from a line start as if no string or comment were open there,
+     * until the first line start reached at or past limit (or the end of input)
+     */
+    private Chunk scanChunk(int from, int limit) {
+        Chunk chunk = new Chunk(from, lineMap);
+        LexerStatistics saved = statistics;
+        rewind(from);
+        checkpoints = chunk.checkpoints;
+        statistics = chunk.statistics;
+        try {
+            while (!isAtEnd()) {
+                start = current;
+                int marks = checkpoints.size;
+                scanToken();
+                if (pending != null) {
+                    chunk.tokens.add(pending);
+                    pending = null;
                 }
-                break;
-                
-            // Multi-character operators starting with !
-            case '!':
-                if (match('=')) {
-                    addToken(TokenType.OPERADOR_COMPARACION);
-                } else {
-                    addToken(TokenType.OPERADOR_LOGICO);
+                if (checkpoints.size > marks && current >= limit) {
+                    // A final newline is a line start at the end of the source
+                    chunk.end = current;
+                    chunk.atEnd = current == source.length();
+                    return chunk;
                 }
-                break;
-                
-            // Comparison operators
-            case '<':
-                if (match('=')) {
-                    addToken(TokenType.OPERADOR_COMPARACION);
-                } else {
-                    addToken(TokenType.OPERADOR_COMPARACION);
+            }
+            chunk.end = current;
+            chunk.atEnd = true;
+            return chunk;
+        } finally {
+            statistics = saved;
+        }
+    }
+
+    /**
+     * Scans and returns the next token. Once the input is exhausted an EOF
+     * token is returned on every call.
+     */
+    public Token nextToken() {
+        while (!isAtEnd()) {
+            start = current;
+            scanToken();
+            if (pending != null) {
+                Token token = pending;
+                pending = null;
+                return token;
+            }
+        }
+        return new Token("", TokenType.EOF, lineMap, current);
+    }
+    
+    /**
+     * Line starts of the input. For a Reader the map grows as the input is
+     * scanned and covers everything read so far.
+     */
+    public LineMap getLineMap() {
+        return lineMap;
+    }
+    
+    /**
+     * Iterates over the remaining tokens, ending with the EOF token
+     */
+    public Iterator<Token> iterator() {
+        return new Iterator<Token>() {
+            private boolean done = false;
+            
+            @Override
+            public boolean hasNext() {
+                return !done;
+            }
+            
+            @Override
+            public Token next() {
+                if (done) {
+                    throw new NoSuchElementException();
                 }
-                break;
-            case '>':
-                if (match('=')) {
-                    addToken(TokenType.OPERADOR_COMPARACION);
-                } else {
-                    addToken(TokenType.OPERADOR_COMPARACION);
+                Token token = nextToken();
+                done = token.getType() == TokenType.EOF;
+                return token;
+            }
+        };
+    }
+    
+    /**
+     * Applies an edit to the source and re-lexes only the region it affects.
+     * Scanning restarts at the last line start before the edit that the previous
+     * scan reached outside any string or comment, and stops as soon as it reaches
+     * a line start beyond the edit where the previous scan was in the same state.
+     * From there on the old tokens are reused, moved by the size of the edit.
+     * 
+     * @param offset position of the edit in the current source
+     * @param removedLength number of characters removed at offset
+     * @param insertedText text inserted at offset
+     * @return the updated token list (the same list returned by scanTokens)
+     */
+    public List<Token> applyEdit(int offset, int removedLength, String insertedText) {
+        if (source == null) {
+            throw new IllegalStateException("Incremental re-lexing needs an in-memory source");
+        }
+        String edited = new StringBuilder(source.length() - removedLength + insertedText.length())
+                .append(source, 0, offset)
+                .append(insertedText)
+                .append(source, offset + removedLength, source.length())
+                .toString();
+        lineMap.edit(offset, removedLength, insertedText);
+        if (tokens.isEmpty() || maxErrors != Integer.MAX_VALUE) {
+            // Nothing scanned yet, there is no previous state to reuse; with
+            // an error limit the count depends on everything before the edit
+            tokens.clear();
+            checkpoints.size = 0;
+            setSource(edited);
+            relexStart = 0;
+            relexEnd = Integer.MAX_VALUE;
+            return scanTokens();
+        }
+        
+        int delta = insertedText.length() - removedLength;
+        int editEnd = offset + insertedText.length();
+        Checkpoints previous = checkpoints;
+        int restartIndex = previous.floor(offset);
+        int restart = restartIndex >= 0 ? previous.offsets[restartIndex] : 0;
+        int errorsBefore = errorCount;
+        
+        setSource(edited);
+        rewind(restart);
+        
+        List<Token> fresh = new ArrayList<>();
+        Checkpoints freshCheckpoints = new Checkpoints();
+        checkpoints = freshCheckpoints;
+        
+        int resyncIndex = -1;
+        try {
+            while (!isAtEnd()) {
+                start = current;
+                int marks = freshCheckpoints.size;
+                scanToken();
+                if (pending != null) {
+                    fresh.add(pending);
+                    pending = null;
                 }
-                break;
                 
-            // Logical operators
-            case '&':
-                if (match('&')) {
-                    addToken(TokenType.OPERADOR_LOGICO);
-                } else {
-                    addError("Unexpected character '&'");
+                // A new safe line start past the edit that was also safe before
+                // means the rest of the old token stream is still valid
+                if (freshCheckpoints.size > marks && current > editEnd) {
+                    resyncIndex = previous.indexOf(current - delta);
+                    if (resyncIndex >= 0) break;
                 }
-                break;
-            case '|':
-                if (match('|')) {
-                    addToken(TokenType.OPERADOR_LOGICO);
+            }
+        } finally {
+            checkpoints = previous;
+        }
+        
+        statisticsStale = true;
+        relexStart = restart;
+        relexEnd = resyncIndex >= 0 ? current : Integer.MAX_VALUE;
+        int from = firstTokenAtOrAfter(restart);
+        // errorCount only counted the re-lexed tokens; the kept ones still count
+        int to = resyncIndex >= 0 ? firstTokenAtOrAfter(current - delta) : tokens.size();
+        errorCount += errorsBefore - countErrors(from, to);
+        if (resyncIndex >= 0) {
+            for (int i = to; i < tokens.size(); i++) {
+                tokens.get(i).shift(delta);
+            }
+            tokens.subList(from, to).clear();
+            tokens.addAll(from, fresh);
+            previous.splice(restartIndex + 1, resyncIndex + 1, freshCheckpoints, delta);
+        } else {
+            fresh.add(new Token("", TokenType.EOF, lineMap, current));
+            tokens.subList(from, tokens.size()).clear();
+            tokens.addAll(fresh);
+            previous.splice(restartIndex + 1, previous.size, freshCheckpoints, 0);
+        }
+        return tokens;
+    }
+    
+    private int countErrors(int from, int to) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (tokens.get(i).isError()) count++;
+        }
+        return count;
+    }
+    
+    /**
+     * Start of the source range re-lexed by the last applyEdit(); the
+     * tokens before it are the same Token objects as before the edit
+     */
+    int getRelexStart() {
+        return relexStart;
+    }
+    
+    /**
+     * End of the range re-lexed by the last applyEdit(); the tokens from
+     * this offset on are the old Token objects, moved by the edit.
+     * Integer.MAX_VALUE if everything after relexStart was scanned again.
+     */
+    int getRelexEnd() {
+        return relexEnd;
+    }
+    
+    private static int indexOf(CharSequence text, char c, int from) {
+        if (text instanceof String) {
+            return ((String) text).indexOf(c, from);
+        }
+        for (int i = from; i < text.length(); i++) {
+            if (text.charAt(i) == c) return i;
+        }
+        return -1;
+    }
+    
+    /**
+     * Index of the first token starting at or after the given source offset
+     */
+    private int firstTokenAtOrAfter(int offset) {
+        int low = 0;
+        int high = tokens.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (tokens.get(mid).getOffset() < offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    /**
+     * Runs the lexer DFA from the current position. The longest prefix that
+     * reaches an accepting state wins; the action of that state then emits
+     * the token or hands over to the code for strings and comments.
+     */
+    private void scanToken() {
+        int[] transitions = LexerTables.transitions;
+        int classes = LexerTables.classCount;
+        int state = LexerTables.START;
+        int accepted = LexerTables.DEAD;
+        int acceptedEnd = current;
+        int position = current;
+        
+        while (position < bufferEnd || fill(position)) {
+            int next = transitions[state * classes + LexerTables.classOf(buffer[position - bufferStart])];
+            if (next == LexerTables.DEAD) break;
+            state = next;
+            position++;
+            if (LexerTables.action[state] != LexerTables.NONE) {
+                accepted = state;
+                acceptedEnd = position;
+            }
+        }
+        
+        if (accepted == LexerTables.DEAD) {
+            char c = advance();
+            if (coalesceErrors && !isAtEnd() && startsNoToken(peek())) {
+                // One token for the whole run of bad characters
+                while (!isAtEnd() && startsNoToken(peek())) advance();
+                addError(UNEXPECTED_CHARACTERS);
+            } else {
+                addError(unexpectedCharacter(c));
+            }
+            return;
+        }
+        
+        current = acceptedEnd;
+        
+        switch (LexerTables.action[accepted]) {
+            case LexerTables.TOKEN:
+                String spelling = LexerTables.spelling[accepted];
+                if (spelling != null) {
+                    // Operators and delimiters share one String per spelling
+                    addToken(LexerTables.tokenType[accepted], spelling, LexerTables.operator[accepted]);
                 } else {
-                    addError("Unexpected character '|'");
+                    addToken(LexerTables.tokenType[accepted]);
                 }
                 break;
-                
-            // Delimiters
-            case '(':
-                addToken(TokenType.APERTURA);
-                break;
-            case ')':
-                addToken(TokenType.CIERRE);
+            case LexerTables.IDENTIFIER:
+                identifier();
                 break;
-            case '[':
-            case ']':
-                addToken(TokenType.AGRUPADOR);
+            case LexerTables.NUMBER:
+                number(LexerTables.tokenType[accepted]);
                 break;
-            case ';':
-                addToken(TokenType.PUNTO_Y_COMA);
+            case LexerTables.ERROR:
+                addError(LexerTables.errorMessage[accepted]);
                 break;
-            case ',':
-                addToken(TokenType.COMA);
+            case LexerTables.LINE_COMMENT:
+                // Single-line comment, consume until end of line
+                while (peek() != '\n' && !isAtEnd()) advance();
+                statistics.comment(current - start);
                 break;
-                
-            // String literals
-            case '"':
-                string();
+            case LexerTables.BLOCK_COMMENT:
+                skipMultiLineComment();
+                statistics.comment(current - start);
                 break;
-            case '\'':
-                singleQuoteString();
+            case LexerTables.STRING:
+                quotedString('"');
                 break;
-                
-            // Whitespace
-            case ' ':
-            case '\r':
-            case '\t':
-                // Ignore whitespace
+            case LexerTables.CHAR_STRING:
+                quotedString('\'');
                 break;
-            case '\n':
-                line++;
-                column = 1;
+            case LexerTables.NEWLINE:
+                if (checkpoints != null) {
+                    checkpoints.add(current);
+                }
+                statistics.whitespace(current - start);
                 break;
-                
             default:
-                if (isDigit(c)) {
-                    number();
-                } else if (isAlpha(c)) {
-                    identifier();
-                } else {
-                    addError("Unexpected character: '" + c + "'");
-                }
+                // Whitespace
+                statistics.whitespace(current - start);
                 break;
         }
     }
     
-    private void string() {
-        StringBuilder value = new StringBuilder();
-        
-        while (peek() != '"' && !isAtEnd()) {
-            if (peek() == '\n') {
-                line++;
-                column = 1;
-            }
-            if (peek() == '\\') {
-                advance(); // consume backslash
-                char escaped = advance();
-                switch (escaped) {
-                    case 'n': value.append('\n'); break;
-                    case 't': value.append('\t'); break;
-                    case 'r': value.append('\r'); break;
-                    case '"': value.append('"'); break;
-                    case '\\': value.append('\\'); break;
-                    default: 
+    /**
+     * Scans a string literal after its opening quote. Escape sequences are
+     * only checked here; the value is decoded when the lexeme is requested.
+     */
+    private void quotedString(char quote) {
+        boolean escapes = false;
+        while (true) {
+            // Skip plain characters straight through the buffer
+            int i = current - bufferStart;
+            int end = bufferEnd - bufferStart;
+            while (i < end && buffer[i] != quote && buffer[i] != '\\') i++;
+            current = i + bufferStart;
+            if (current >= bufferEnd && fill(current)) continue;
+            
+            if (peek() != '\\') break;
+            advance(); // consume backslash
+            char escaped = advance();
+            switch (escaped) {
+                case 'n':
+                case 't':
+                case 'r':
+                case '\\':
+                    break;
+                default:
+                    if (escaped != quote) {
                         addError("Invalid escape sequence: \\'" + escaped + "'");
                         return;
-                }
-            } else {
-                value.append(advance());
+                    }
             }
+            escapes = true;
         }
         
         if (isAtEnd()) {
@@ -270,124 +730,140 @@ public class Scanner {
             return;
         }
         
-        advance(); // consume closing "
+        advance(); // consume closing quote
         
-        // Create token with the processed string value
-        tokens.add(new Token("\"" + value.toString() + "\"", TokenType.LITERAL_CADENA, line, startColumn));
+        addLiteral(escapes);
     }
     
-    private void singleQuoteString() {
-        StringBuilder value = new StringBuilder();
-        
-        while (peek() != '\'' && !isAtEnd()) {
-            if (peek() == '\n') {
-                line++;
-                column = 1;
-            }
-            if (peek() == '\\') {
-                advance();
-                char escaped = advance();
-                switch (escaped) {
-                    case 'n': value.append('\n'); break;
-                    case 't': value.append('\t'); break;
-                    case 'r': value.append('\r'); break;
-                    case '\'': value.append('\''); break;
-                    case '\\': value.append('\\'); break;
-                    default:
-                        addError("Invalid escape sequence: \\'" + escaped + "'");
-                        return;
+    /**
+     * The DFA has consumed a numeric literal: decode its value from the
+     * scan buffer. Values that do not fit a long (integers) or a double
+     * (decimals) are lexical errors.
+     */
+    private void number(TokenType type) {
+        int from = start - bufferStart;
+        int to = current - bufferStart;
+        if (type == TokenType.ENTERO) {
+            long value = 0;
+            for (int i = from; i < to; i++) {
+                int digit = buffer[i] - '0';
+                if (value > (Long.MAX_VALUE - digit) / 10) {
+                    addError("Entero fuera de rango: el maximo es " + Long.MAX_VALUE);
+                    return;
                 }
-            } else {
-                value.append(advance());
+                value = value * 10 + digit;
             }
+            addNumber(type, value);
+        } else {
+            double value = decimalValue(buffer, from, to);
+            if (Double.isInfinite(value)) {
+                addError("Decimal fuera de rango: el maximo es " + Double.MAX_VALUE);
+                return;
+            }
+            addNumber(type, Double.doubleToRawLongBits(value));
         }
-        
-        if (isAtEnd()) {
-            addError("Unterminated string");
-            return;
-        }
-        
-        advance(); // consume closing '
-        
-        tokens.add(new Token("'" + value.toString() + "'", TokenType.LITERAL_CADENA, line, startColumn));
     }
     
-    private void number() {
-        while (isDigit(peek())) advance();
-        
-        boolean isDecimal = false;
-        if (peek() == '.' && isDigit(peekNext())) {
-            isDecimal = true;
-            advance(); // consume '.'
-            while (isDigit(peek())) advance();
+    /**
+     * Value of digits ("." digits)? ([eE] [+-]? digits)? in chars[from, to).
+     * When the significant digits fit in 53 bits and the power of ten is
+     * exact in a double, one multiplication or division gives the correctly
+     * rounded result (Clinger's fast path); other literals go through
+     * Double.parseDouble.
+     */
+    static double decimalValue(char[] chars, int from, int to) {
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        int exponent = 0;
+        boolean fraction = false;
+        int i = from;
+        for (; i < to; i++) {
+            char c = chars[i];
+            if (c == '.') {
+                fraction = true;
+                continue;
+            }
+            if (c == 'e' || c == 'E') break;
+            if (mantissa == 0 && c == '0') {
+                if (fraction) scale--;   // leading zeros are not significant
+                continue;
+            }
+            if (digits == 18) {
+                return Double.parseDouble(new String(chars, from, to - from));
+            }
+            mantissa = mantissa * 10 + (c - '0');
+            digits++;
+            if (fraction) scale--;
         }
-        
-        // Scientific notation
-        if (peek() == 'e' || peek() == 'E') {
-            int savePos = current;
-            advance();
-            if (peek() == '+' || peek() == '-') advance();
-            if (isDigit(peek())) {
-                isDecimal = true;
-                while (isDigit(peek())) advance();
-            } else {
-                // Not a valid exponent, backtrack
-                current = savePos;
-                column = startColumn + (current - start);
+        if (i < to) {
+            boolean negative = chars[++i] == '-';
+            if (chars[i] == '+' || chars[i] == '-') i++;
+            for (; i < to; i++) {
+                exponent = Math.min(exponent * 10 + (chars[i] - '0'), 100000);
             }
+            if (negative) exponent = -exponent;
         }
         
-        String numberStr = source.substring(start, current);
-        TokenType type = isDecimal ? TokenType.DECIMAL : TokenType.ENTERO;
-        tokens.add(new Token(numberStr, type, line, startColumn));
+        int power = scale + exponent;
+        if (mantissa == 0) return 0.0;
+        if (mantissa < (1L << 53)) {
+            if (power >= 0 && power <= 22) {
+                return mantissa * POWERS_OF_TEN[power];
+            }
+            if (power < 0 && power >= -22) {
+                return mantissa / POWERS_OF_TEN[-power];
+            }
+        }
+        return Double.parseDouble(new String(chars, from, to - from));
     }
     
+    /**
+     * The DFA has consumed an identifier: check what follows it and
+     * whether it is a keyword
+     */
     private void identifier() {
-        while (isAlphaNumeric(peek())) advance();
-        
         // Check if the next character is a valid delimiter
         char nextChar = peek();
-        if (!isValidDelimiter(nextChar)) {
+        if (!LexerTables.isDelimiter(nextChar)) {
             // Invalid character follows - consume it and create error token
             advance();
-            String errorText = source.substring(start, current);
-            addError("Identificador invalido: caracter no permitido '" + nextChar + "' despues del identificador");
+            addError(invalidAfterIdentifier(nextChar));
             return;
         }
         
-        String text = source.substring(start, current);
-        TokenType type = reservedWords.getOrDefault(text, TokenType.IDENTIFICADOR);
-        addToken(type);
+        int keyword = findKeyword();
+        if (keyword >= 0) {
+            // Keywords share their canonical String instead of a new substring
+            statistics.keyword(keyword);
+            addToken(LexerTables.keywordType[keyword], LexerTables.keywordText[keyword], Operator.NONE);
+        } else {
+            statistics.identifier(current - start);
+            addToken(TokenType.IDENTIFICADOR);
+        }
     }
     
-    private boolean isValidDelimiter(char c) {
-        // Valid characters that can follow an identifier:
-        // Whitespace, EOF, assignment, arithmetic, grouping, punctuation, comparison, logical operators
-        return c == '\0' ||           // EOF
-               c == ' ' ||            // Space
-               c == '\t' ||           // Tab
-               c == '\n' ||           // Newline
-               c == '\r' ||           // Carriage return
-               c == '=' ||            // Assignment or comparison start
-               c == '+' ||            // Arithmetic
-               c == '-' ||            // Arithmetic
-               c == '*' ||            // Arithmetic
-               c == '/' ||            // Arithmetic or comment start
-               c == '(' ||            // Grouping
-               c == ')' ||            // Grouping
-               c == '[' ||            // Grouping
-               c == ']' ||            // Grouping
-               c == '{' ||            // Grouping
-               c == '}' ||            // Grouping
-               c == ';' ||            // Punctuation
-               c == ',' ||            // Punctuation
-               c == '<' ||            // Comparison
-               c == '>' ||            // Comparison
-               c == '!' ||            // Logical or comparison
-               c == '&' ||            // Logical
-               c == '|' ||            // Logical
-               c == '"' ||            // String literal start
-               c == '\'';             // Char literal start
+    /**
+     * Looks up the identifier just scanned in the keyword tables, comparing
+     * directly against the scan buffer
+     * @return keyword index, or -1 for a plain identifier
+     */
+    private int findKeyword() {
+        int length = current - start;
+        if (length > LexerTables.MAX_KEYWORD_LENGTH) return -1;
+        int from = start - bufferStart;
+        char first = buffer[from];
+        if (first < 'a' || first > 'z') return -1;
+        
+        int[] candidates = LexerTables.keywordBuckets[length * 26 + (first - 'a')];
+        if (candidates == null) return -1;
+        for (int k : candidates) {
+            String word = LexerTables.keywordText[k];
+            int i = 1;
+            while (i < length && buffer[from + i] == word.charAt(i)) i++;
+            if (i == length) return k;
+        }
+        return -1;
     }
     
     private void skipMultiLineComment() {
@@ -402,10 +878,6 @@ public class Scanner {
                 advance();
                 nesting--;
             } else {
-                if (peek() == '\n') {
-                    line++;
-                    column = 1;
-                }
                 advance();
             }
         }
@@ -417,57 +889,320 @@ public class Scanner {
     
     private boolean match(char expected) {
         if (isAtEnd()) return false;
-        if (source.charAt(current) != expected) return false;
+        if (buffer[current - bufferStart] != expected) return false;
         current++;
-        column++;
         return true;
     }
     
     private char peek() {
         if (isAtEnd()) return '\0';
-        return source.charAt(current);
+        return buffer[current - bufferStart];
     }
     
     private char peekNext() {
-        if (current + 1 >= source.length()) return '\0';
-        return source.charAt(current + 1);
+        if (current + 1 >= bufferEnd && !fill(current + 1)) return '\0';
+        return buffer[current + 1 - bufferStart];
     }
     
     private char advance() {
-        char c = source.charAt(current);
+        if (isAtEnd()) return '\0';
+        char c = buffer[current - bufferStart];
         current++;
-        column++;
         return c;
     }
     
     private boolean isAtEnd() {
-        return current >= source.length();
+        return aborted || current >= bufferEnd && !fill(current);
+    }
+    
+    /**
+     * Whether the DFA rejects c as the first character of a token
+     */
+    private static boolean startsNoToken(char c) {
+        return LexerTables.transitions[LexerTables.START * LexerTables.classCount + LexerTables.classOf(c)]
+                == LexerTables.DEAD;
+    }
+    
+    private static String unexpectedCharacter(char c) {
+        if (c >= UNEXPECTED_CHARACTER.length) {
+            return "Unexpected character: '" + c + "'";
+        }
+        String message = UNEXPECTED_CHARACTER[c];
+        if (message == null) {
+            message = "Unexpected character: '" + c + "'";
+            UNEXPECTED_CHARACTER[c] = message;
+        }
+        return message;
+    }
+    
+    private static String invalidAfterIdentifier(char c) {
+        if (c >= INVALID_AFTER_IDENTIFIER.length) {
+            return "Identificador invalido: caracter no permitido '" + c + "' despues del identificador";
+        }
+        String message = INVALID_AFTER_IDENTIFIER[c];
+        if (message == null) {
+            message = "Identificador invalido: caracter no permitido '" + c + "' despues del identificador";
+            INVALID_AFTER_IDENTIFIER[c] = message;
+        }
+        return message;
+    }
+    
+    /**
+     * Loads input until the char at position is buffered. Characters before
+     * the start of the current token are dropped to make room; the buffer only
+     * grows when a single token does not fit in it.
+     * @return false if the input ends before position
+     */
+    private boolean fill(int position) {
+        while (position >= bufferEnd) {
+            if (exhausted) return false;
+            
+            int discard = start - bufferStart;
+            if (discard > 0) {
+                System.arraycopy(buffer, discard, buffer, 0, bufferEnd - start);
+                bufferStart = start;
+            }
+            if (bufferEnd - bufferStart == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            
+            int offset = bufferEnd - bufferStart;
+            int count = read(buffer, offset, buffer.length - offset);
+            if (count < 0) {
+                exhausted = true;
+                return false;
+            }
+            if (count > MAX_INPUT_LENGTH - bufferEnd) {
+                throw new IllegalStateException("Input longer than " + MAX_INPUT_LENGTH
+                        + " characters: source offsets would overflow");
+            }
+            if (reader != null) {
+                // Streamed input: line starts are found as the text arrives
+                lineMap.scan(buffer, offset, offset + count, bufferEnd);
+            }
+            bufferEnd += count;
+        }
+        return true;
     }
     
-    private boolean isDigit(char c) {
-        return c >= '0' && c <= '9';
+    private int read(char[] target, int offset, int length) {
+        if (reader == null) {
+            int count = Math.min(length, source.length() - bufferEnd);
+            if (count <= 0) return -1;
+            if (source instanceof String) {
+                ((String) source).getChars(bufferEnd, bufferEnd + count, target, offset);
+            } else {
+                for (int i = 0; i < count; i++) {
+                    target[offset + i] = source.charAt(bufferEnd + i);
+                }
+            }
+            return count;
+        }
+        try {
+            return reader.read(target, offset, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
     
-    private boolean isAlpha(char c) {
-        return (c >= 'a' && c <= 'z') || 
-               (c >= 'A' && c <= 'Z') || 
-               c == '_' ||
-               (c >= 'á' && c <= 'ú') ||
-               (c >= 'Á' && c <= 'Ú') ||
-               c == 'ñ' || c == 'Ñ';
+    /**
+     * Moves the scan position back to an offset of the in-memory source
+     */
+    private void rewind(int position) {
+        start = position;
+        current = position;
+        if (wholeInput) return;
+        bufferStart = position;
+        bufferEnd = position;
+        exhausted = false;
     }
     
-    private boolean isAlphaNumeric(char c) {
-        return isAlpha(c) || isDigit(c);
+    private String lexeme() {
+        return new String(buffer, start - bufferStart, current - start);
     }
     
     private void addToken(TokenType type) {
-        String text = source.substring(start, current);
-        tokens.add(new Token(text, type, line, startColumn));
+        statistics.token(type);
+        if (target != null) {
+            target.add(type, start, current - start);
+            return;
+        }
+        if (source instanceof String) {
+            // The lexeme stays a range of the source until it is asked for
+            pending = new Token(type, null, (String) source, start, current - start, lineMap, false);
+            return;
+        }
+        pending = new Token(lexeme(), type, lineMap, start);
+    }
+    
+    /**
+     * Adds a token whose lexeme is already known, so no substring is taken,
+     * with its Operator id
+     */
+    private void addToken(TokenType type, String lexeme, int operator) {
+        statistics.token(type);
+        if (target != null) {
+            if (operator != Operator.NONE) {
+                target.addOperator(type, start, current - start, operator);
+            } else {
+                target.add(type, start, current - start);
+            }
+            return;
+        }
+        pending = new Token(lexeme, type, lineMap, start);
+        pending.setOperator(operator);
+    }
+    
+    /**
+     * String literal token. Its lexeme is the literal with the quotes kept
+     * and the escape sequences decoded; when the source is a String this
+     * is done only when the lexeme is requested.
+     */
+    private void addLiteral(boolean escapes) {
+        statistics.token(TokenType.LITERAL_CADENA);
+        if (target != null) {
+            target.add(TokenType.LITERAL_CADENA, start, current - start);
+            return;
+        }
+        if (source instanceof String) {
+            pending = new Token(TokenType.LITERAL_CADENA, null, (String) source, start, current - start, lineMap, escapes);
+            return;
+        }
+        String lexeme = escapes
+                ? decodeLiteral(CharBuffer.wrap(buffer), start - bufferStart, current - bufferStart)
+                : lexeme();
+        pending = new Token(lexeme, TokenType.LITERAL_CADENA, lineMap, start);
+    }
+    
+    /**
+     * Numeric literal with its value: a long for ENTERO, the bits of a
+     * double for DECIMAL
+     */
+    private void addNumber(TokenType type, long value) {
+        if (target != null) {
+            statistics.token(type);
+            target.addNumber(type, start, current - start, value);
+            return;
+        }
+        addToken(type);
+        pending.setValue(value);
     }
     
     private void addError(String message) {
-        String text = source.substring(start, current);
-        tokens.add(new Token(text, message, line, startColumn));
+        if (errorCount == maxErrors) {
+            message = TOO_MANY_ERRORS;
+            aborted = true;
+        } else {
+            errorCount++;
+        }
+        statistics.token(TokenType.ERROR);
+        statistics.error(start);
+        if (target != null) {
+            target.addError(message, start, current - start);
+            return;
+        }
+        if (source instanceof String) {
+            pending = new Token(TokenType.ERROR, message, (String) source, start, current - start, lineMap, false);
+            return;
+        }
+        pending = new Token(lexeme(), message, lineMap, start);
+    }
+    
+    /**
+     * Lexeme of a string literal token from its source text: the quotes are
+     * kept and escape sequences are replaced by the characters they stand for
+     */
+    static String decodeLiteral(CharSequence text, int start, int end) {
+        StringBuilder value = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '\\') {
+                char escaped = text.charAt(++i);
+                switch (escaped) {
+                    case 'n': value.append('\n'); break;
+                    case 't': value.append('\t'); break;
+                    case 'r': value.append('\r'); break;
+                    default: value.append(escaped); break;
+                }
+            } else {
+                value.append(c);
+            }
+        }
+        return value.toString();
+    }
+    
+    /**
+     * Tokens of one chunk of a parallel scan
+     */
+    private static final class Chunk {
+        final int from;
+        final List<Token> tokens = new ArrayList<>();
+        final Checkpoints checkpoints = new Checkpoints();
+        final LexerStatistics statistics;
+        int end;
+        boolean atEnd;
+
+        Chunk(int from, LineMap lineMap) {
+            this.from = from;
+            this.statistics = new LexerStatistics(lineMap);
+        }
+    }
+
+    /**
+     * Line starts that the scanner reached outside of strings and comments,
+     * in source order. These are the points where re-lexing can safely restart.
+     */
+    private static final class Checkpoints {
+        int[] offsets = new int[64];
+        int size;
+        
+        void add(int offset) {
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+            offsets[size++] = offset;
+        }
+        
+        /**
+         * Index of the last checkpoint at or before offset, or -1
+         */
+        int floor(int offset) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (offsets[mid] <= offset) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return high;
+        }
+        
+        /**
+         * Index of the checkpoint exactly at offset, or -1
+         */
+        int indexOf(int offset) {
+            int index = floor(offset);
+            return index >= 0 && offsets[index] == offset ? index : -1;
+        }
+        
+        /**
+         * Replaces checkpoints [from, to) with the given ones and moves the
+         * checkpoints after them by offsetDelta
+         */
+        void splice(int from, int to, Checkpoints replacement, int offsetDelta) {
+            int tail = size - to;
+            int newSize = from + replacement.size + tail;
+            int[] newOffsets = new int[Math.max(newSize, 64)];
+            System.arraycopy(offsets, 0, newOffsets, 0, from);
+            System.arraycopy(replacement.offsets, 0, newOffsets, from, replacement.size);
+            for (int i = 0; i < tail; i++) {
+                newOffsets[from + replacement.size + i] = offsets[to + i] + offsetDelta;
+            }
+            offsets = newOffsets;
+            size = newSize;
+        }
     }
 }
@@ -14,6 +14,7 @@ public class SyntaxError {
     private int column;
     private String expected;
     private String found;
+    private Token token;            // token the error was reported at, if known
     
     public SyntaxError(String message, int line, int column, String expected, String found) {
         this.message = message;
@@ -23,6 +24,26 @@ public class SyntaxError {
         this.found = found;
     }
     
+    SyntaxError(String message, Token token, String expected, String found) {
+        this(message, token.getLine(), token.getColumn(), expected, found);
+        this.token = token;
+    }
+    
+    Token getToken() {
+        return token;
+    }
+    
+    /**
+     * The same error at the current position of its token, after an edit
+     * earlier in the source moved it
+     */
+    SyntaxError moved() {
+        if (token == null || (token.getLine() == line && token.getColumn() == column)) {
+            return this;
+        }
+        return new SyntaxError(message, token, expected, found);
+    }
+    
     public String getMessage() {
         return message;
     }
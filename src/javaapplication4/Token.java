@@ -6,37 +6,106 @@ package javaapplication4;
 
 /**
  * Represents a token in the lexical analysis
+ * 
+ * Tokens scanned from a String may keep their lexeme as a range of that
+ * String; the lexeme is only copied out when getLexeme() is called.
  * @author Gerardo
  */
 public class Token {
-    private String lexeme;
+    private String lexeme;          // null until the source range is materialized
+    private String text;            // source holding the lexeme, for lazy tokens
+    private int textStart;
+    private int textLength;
+    private boolean escapes;        // the source range is a literal with escape sequences
     private TokenType type;
     private int line;
     private int column;
+    private int offset;
+    private LineMap lines;          // when set, line and column come from the offset
+    private long value;             // ENTERO value, or DECIMAL value as double bits
+    private boolean hasValue;
+    private byte operator = -1;     // Operator id, -1 until known
     private String errorMessage;
     
     public Token(String lexeme, TokenType type, int line, int column) {
+        this(lexeme, type, line, column, -1);
+    }
+    
+    public Token(String lexeme, TokenType type, int line, int column, int offset) {
         this.lexeme = lexeme;
         this.type = type;
         this.line = line;
         this.column = column;
+        this.offset = offset;
         this.errorMessage = null;
     }
     
+    /**
+     * Token whose line and column are looked up from its offset when asked for
+     */
+    Token(String lexeme, TokenType type, LineMap lines, int offset) {
+        this(lexeme, type, 0, 0, offset);
+        this.lines = lines;
+    }
+    
     public Token(String lexeme, String errorMessage, int line, int column) {
+        this(lexeme, errorMessage, line, column, -1);
+    }
+    
+    public Token(String lexeme, String errorMessage, int line, int column, int offset) {
         this.lexeme = lexeme;
         this.type = TokenType.ERROR;
         this.line = line;
         this.column = column;
+        this.offset = offset;
+        this.errorMessage = errorMessage;
+    }
+    
+    Token(String lexeme, String errorMessage, LineMap lines, int offset) {
+        this(lexeme, errorMessage, 0, 0, offset);
+        this.lines = lines;
+    }
+    
+    /**
+     * Token whose lexeme is text[offset, offset + length), copied on first
+     * use; with escapes set it is a string literal whose escape sequences
+     * are decoded at that point
+     */
+    Token(TokenType type, String errorMessage, String text, int offset, int length, LineMap lines,
+            boolean escapes) {
+        this.type = type;
+        this.text = text;
+        this.textStart = offset;
+        this.textLength = length;
+        this.escapes = escapes;
+        this.offset = offset;
+        this.lines = lines;
         this.errorMessage = errorMessage;
     }
     
     public String getLexeme() {
-        return lexeme;
+        String value = lexeme;
+        if (value == null && text != null) {
+            value = escapes
+                    ? Scanner.decodeLiteral(text, textStart, textStart + textLength)
+                    : text.substring(textStart, textStart + textLength);
+            lexeme = value;
+        }
+        return value;
     }
     
     public String getLexema() {
-        return lexeme;
+        return getLexeme();
+    }
+    
+    /**
+     * Compares the lexeme with a string without materializing it
+     */
+    boolean lexemeEquals(String other) {
+        if (text == null || escapes) {
+            return getLexeme().equals(other);
+        }
+        return other.length() == textLength && text.startsWith(other, textStart);
     }
     
     public TokenType getType() {
@@ -52,11 +121,64 @@ public class Token {
     }
     
     public int getLine() {
-        return line;
+        return lines != null ? lines.getLine(offset) : line;
     }
     
     public int getColumn() {
-        return column;
+        return lines != null ? lines.getColumn(offset) : column;
+    }
+    
+    /**
+     * Offset of the first source character of this token, or -1 if unknown
+     */
+    public int getOffset() {
+        return offset;
+    }
+    
+    /**
+     * Value of an ENTERO literal
+     */
+    public long getLongValue() {
+        if (type != TokenType.ENTERO) {
+            throw new IllegalStateException("Not an integer literal: " + type);
+        }
+        return hasValue ? value : Long.parseLong(getLexeme());
+    }
+    
+    /**
+     * Value of an ENTERO or DECIMAL literal
+     */
+    public double getDoubleValue() {
+        if (type == TokenType.ENTERO) {
+            return getLongValue();
+        }
+        if (type != TokenType.DECIMAL) {
+            throw new IllegalStateException("Not a numeric literal: " + type);
+        }
+        return hasValue ? Double.longBitsToDouble(value) : Double.parseDouble(getLexeme());
+    }
+    
+    /**
+     * Sets the value decoded by the scanner (double bits for DECIMAL)
+     */
+    void setValue(long value) {
+        this.value = value;
+        this.hasValue = true;
+    }
+    
+    /**
+     * Operator id given by the scanner; looked up from the lexeme for
+     * tokens that were created elsewhere
+     */
+    int getOperator() {
+        if (operator < 0) {
+            operator = (byte) Operator.of(this);
+        }
+        return operator;
+    }
+    
+    void setOperator(int operator) {
+        this.operator = (byte) operator;
     }
     
     public String getErrorMessage() {
@@ -67,13 +189,20 @@ public class Token {
         return type == TokenType.ERROR;
     }
     
+    /**
+     * Moves the token after an edit earlier in the source (used by incremental re-lexing)
+     */
+    void shift(int offsetDelta) {
+        this.offset += offsetDelta;
+    }
+    
     @Override
     public String toString() {
         if (isError()) {
             return String.format("Error en linea %d, col %d: %s - %s", 
-                line, column, lexeme, errorMessage);
+                getLine(), getColumn(), getLexeme(), errorMessage);
         }
         return String.format("Token[%s, '%s', code=%d, line=%d, col=%d]", 
-            type.name(), lexeme, type.getCode(), line, column);
+            type.name(), getLexeme(), type.getCode(), getLine(), getColumn());
     }
 }
@@ -0,0 +1,279 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package javaapplication4;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Compact token storage: one primitive array per token field instead of
+ * one Token object per token. Lexemes are not stored; they are read back
+ * from the source when requested, and lines and columns are looked up in
+ * the source's LineMap. Error messages live in a side table
+ * keyed by token index, since only error tokens have one.
+ * @author Gerardo
+ */
+public class TokenBuffer {
+    
+    private static final TokenType[] TYPES = TokenType.values();
+    
+    private final CharSequence source;
+    private final LineMap lineMap;
+    private byte[] types;
+    private int[] starts;
+    private int[] lengths;
+    private long[] values;          // numeric literal values, created with the first one
+    private byte[] operators;       // Operator ids, created with the first operator
+    private int size;
+    private final Map<Integer, String> errorMessages;
+    
+    public TokenBuffer(CharSequence source) {
+        this(source, 1024);
+    }
+    
+    public TokenBuffer(CharSequence source, int capacity) {
+        this(source, LineMap.of(source), capacity);
+    }
+    
+    TokenBuffer(CharSequence source, LineMap lineMap, int capacity) {
+        capacity = Math.max(capacity, 16);
+        this.source = source;
+        this.lineMap = lineMap;
+        this.types = new byte[capacity];
+        this.starts = new int[capacity];
+        this.lengths = new int[capacity];
+        this.size = 0;
+        this.errorMessages = new HashMap<>();
+    }
+    
+    void add(TokenType type, int start, int length) {
+        if (size == types.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            if (values != null) {
+                values = Arrays.copyOf(values, capacity);
+            }
+            if (operators != null) {
+                operators = Arrays.copyOf(operators, capacity);
+            }
+        }
+        types[size] = (byte) type.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        size++;
+    }
+    
+    /**
+     * Numeric literal: a long for ENTERO, the bits of a double for DECIMAL
+     */
+    void addNumber(TokenType type, int start, int length, long value) {
+        add(type, start, length);
+        if (values == null) {
+            values = new long[types.length];
+        }
+        values[size - 1] = value;
+    }
+    
+    /**
+     * Operator token with the Operator id the scanner gave it
+     */
+    void addOperator(TokenType type, int start, int length, int operator) {
+        add(type, start, length);
+        if (operators == null) {
+            operators = new byte[types.length];
+        }
+        operators[size - 1] = (byte) operator;
+    }
+    
+    void addError(String message, int start, int length) {
+        errorMessages.put(size, message);
+        add(TokenType.ERROR, start, length);
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public TokenType getType(int index) {
+        return TYPES[types[index]];
+    }
+    
+    public int getOffset(int index) {
+        return starts[index];
+    }
+    
+    public int getLength(int index) {
+        return lengths[index];
+    }
+    
+    public int getLine(int index) {
+        return lineMap.getLine(starts[index]);
+    }
+    
+    public int getColumn(int index) {
+        return lineMap.getColumn(starts[index]);
+    }
+    
+    /**
+     * Value of an ENTERO literal
+     */
+    public long getLongValue(int index) {
+        if (types[index] != TokenType.ENTERO.ordinal()) {
+            throw new IllegalStateException("Not an integer literal: " + getType(index));
+        }
+        return values[index];
+    }
+    
+    /**
+     * Value of an ENTERO or DECIMAL literal
+     */
+    public double getDoubleValue(int index) {
+        if (types[index] == TokenType.ENTERO.ordinal()) {
+            return values[index];
+        }
+        if (types[index] != TokenType.DECIMAL.ordinal()) {
+            throw new IllegalStateException("Not a numeric literal: " + getType(index));
+        }
+        return Double.longBitsToDouble(values[index]);
+    }
+    
+    /**
+     * Operator id of a token, Operator.NONE if it is not an operator
+     */
+    int getOperator(int index) {
+        return operators != null ? operators[index] : Operator.NONE;
+    }
+    
+    public String getErrorMessage(int index) {
+        return errorMessages.get(index);
+    }
+    
+    /**
+     * Lexeme of a token, built from the source on each call.
+     * String literals are returned with their escape sequences decoded,
+     * as Scanner does.
+     */
+    public String getLexeme(int index) {
+        int start = starts[index];
+        int end = start + lengths[index];
+        if (types[index] == TokenType.LITERAL_CADENA.ordinal()) {
+            return Scanner.decodeLiteral(source, start, end);
+        }
+        return source.subSequence(start, end).toString();
+    }
+    
+    /**
+     * Compares a lexeme without building it
+     */
+    public boolean lexemeEquals(int index, String text) {
+        if (types[index] == TokenType.LITERAL_CADENA.ordinal()) {
+            return getLexeme(index).equals(text);
+        }
+        int length = lengths[index];
+        if (length != text.length()) return false;
+        int start = starts[index];
+        for (int i = 0; i < length; i++) {
+            if (source.charAt(start + i) != text.charAt(i)) return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Materializes the token at index as a Token object
+     */
+    public Token getToken(int index) {
+        Token token;
+        if (source instanceof String) {
+            // Lexeme read from the source only when the token is asked for it
+            token = new Token(getType(index), errorMessages.get(index), (String) source,
+                    starts[index], lengths[index], lineMap,
+                    types[index] == TokenType.LITERAL_CADENA.ordinal());
+        } else if (types[index] == TokenType.ERROR.ordinal()) {
+            token = new Token(getLexeme(index), errorMessages.get(index), lineMap, starts[index]);
+        } else {
+            token = new Token(getLexeme(index), getType(index), lineMap, starts[index]);
+        }
+        if (types[index] == TokenType.ENTERO.ordinal() || types[index] == TokenType.DECIMAL.ordinal()) {
+            token.setValue(values[index]);
+        }
+        token.setOperator(getOperator(index));
+        return token;
+    }
+    
+    /**
+     * List view for code that works with List&lt;Token&gt;; tokens are
+     * materialized on each get()
+     */
+    public List<Token> asList() {
+        return new TokenList();
+    }
+    
+    /**
+     * Cursor for the Parser; the trailing EOF token marks the end
+     */
+    TokenCursor cursor() {
+        return new Cursor();
+    }
+    
+    private final class TokenList extends AbstractList<Token> implements RandomAccess {
+        @Override
+        public Token get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return getToken(index);
+        }
+        
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+    
+    private final class Cursor implements TokenCursor {
+        private final int limit;
+        
+        Cursor() {
+            int end = size;
+            if (end > 0 && types[end - 1] == TokenType.EOF.ordinal()) end--;
+            this.limit = end;
+        }
+        
+        @Override
+        public boolean has(int index) {
+            return index < limit;
+        }
+        
+        @Override
+        public TokenType type(int index) {
+            return TYPES[types[index]];
+        }
+        
+        @Override
+        public boolean lexemeEquals(int index, String text) {
+            return TokenBuffer.this.lexemeEquals(index, text);
+        }
+        
+        @Override
+        public int operator(int index) {
+            return getOperator(index);
+        }
+        
+        @Override
+        public Token token(int index) {
+            if (index >= limit) {
+                // Last real token, or the EOF token if there is none
+                index = limit > 0 ? limit - 1 : size - 1;
+            }
+            return getToken(index);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package javaapplication4;
+
+/**
+ * Random-access view of a token sequence used by the Parser.
+ * Types and lexemes can be inspected by position without materializing
+ * Token objects; token() is only called when the parser needs one for
+ * the AST or an error message.
+ * @author Gerardo
+ */
+interface TokenCursor {
+    
+    /**
+     * Whether there is a token at index (a streaming cursor may load it now)
+     */
+    boolean has(int index);
+    
+    TokenType type(int index);
+    
+    boolean lexemeEquals(int index, String text);
+    
+    /**
+     * Operator id of the token at index, Operator.NONE for other tokens
+     */
+    int operator(int index);
+    
+    /**
+     * Token at index; past the end this is the last available token
+     */
+    Token token(int index);
+}
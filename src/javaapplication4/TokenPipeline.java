@@ -0,0 +1,198 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package javaapplication4;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a Scanner on a thread of its own and hands its tokens to the
+ * consumer (normally a Parser built on this iterator) through a bounded
+ * single-producer single-consumer ring buffer, so lexing and parsing
+ * overlap. Each side only writes its own index and reads the other's, so
+ * no locks are needed. When the ring is full the lexer waits for the
+ * parser; tokens in flight never exceed the capacity.
+ *
+ * The first lexical error cancels the pipeline: the lexer stops, the
+ * iterator ends as if the input had ended there, and getLexicalError()
+ * returns the ERROR token. close() cancels the lexer from the consumer
+ * side, e.g. when the parser gives up.
+ * @author Gerardo
+ */
+public final class TokenPipeline implements Iterator<Token>, AutoCloseable {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final int SPINS = 100;
+
+    private final Scanner scanner;
+    private final Token[] ring;
+    private final int mask;
+    private final Thread lexer;
+
+    // Written by the lexer thread only
+    private volatile long written;
+    private volatile boolean finished;      // no more tokens will be written
+    private volatile Token lexicalError;
+    private volatile RuntimeException failure;
+    private long readCache;                 // last value of read seen by the lexer
+
+    // Written by the consumer only
+    private volatile long read;
+    private volatile boolean cancelled;
+    private long writtenCache;              // last value of written seen by the consumer
+    private boolean ended;                  // EOF returned, or the stream ended early
+
+    public TokenPipeline(Scanner scanner) {
+        this(scanner, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity tokens the ring buffer holds, rounded up to a power of two
+     */
+    public TokenPipeline(Scanner scanner, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+        this.scanner = scanner;
+        this.ring = new Token[size];
+        this.mask = size - 1;
+        this.lexer = new Thread(this::produce, "lexer-pipeline");
+        this.lexer.setDaemon(true);
+    }
+
+    /**
+     * Starts lexing; tokens can be consumed as soon as this returns
+     */
+    public TokenPipeline start() {
+        lexer.start();
+        return this;
+    }
+
+    private void produce() {
+        try {
+            while (!cancelled) {
+                Token token = scanner.nextToken();
+                if (token.isError()) {
+                    lexicalError = token;
+                    return;
+                }
+                if (!offer(token) || token.getType() == TokenType.EOF) {
+                    return;
+                }
+            }
+        } catch (RuntimeException e) {
+            failure = e;
+        } finally {
+            finished = true;
+        }
+    }
+
+    /**
+     * Writes a token, waiting while the ring is full
+     * @return false if the consumer cancelled the pipeline meanwhile
+     */
+    private boolean offer(Token token) {
+        long index = written;
+        for (int spins = 0; index - readCache == ring.length; spins++) {
+            readCache = read;
+            if (index - readCache < ring.length) break;
+            if (cancelled) return false;
+            pause(spins);
+        }
+        ring[(int) index & mask] = token;
+        written = index + 1;    // volatile write publishes the slot
+        return true;
+    }
+
+    /**
+     * Waits for the next token; false once the EOF token has been returned
+     * or the lexer stopped early (lexical error, cancel)
+     */
+    @Override
+    public boolean hasNext() {
+        if (ended) {
+            return false;
+        }
+        long index = read;
+        for (int spins = 0; index == writtenCache; spins++) {
+            writtenCache = written;
+            if (index < writtenCache) break;
+            if (finished) {
+                // Tokens written before finishing are visible by now
+                writtenCache = written;
+                if (index < writtenCache) break;
+                ended = true;
+                if (failure != null) throw failure;
+                return false;
+            }
+            pause(spins);
+        }
+        return true;
+    }
+
+    @Override
+    public Token next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        long index = read;
+        int slot = (int) index & mask;
+        Token token = ring[slot];
+        ring[slot] = null;
+        read = index + 1;       // frees the slot for the lexer
+        if (token.getType() == TokenType.EOF) {
+            ended = true;
+        }
+        return token;
+    }
+
+    /**
+     * Busy-waits briefly, then yields, then sleeps, so a waiting side does
+     * not take the CPU from the other one for long
+     */
+    private static void pause(int spins) {
+        if (spins < SPINS) {
+            Thread.onSpinWait();
+        } else if (spins < 2 * SPINS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(50_000);
+        }
+    }
+
+    /**
+     * First lexical error, which stopped the pipeline, or null
+     */
+    public Token getLexicalError() {
+        return lexicalError;
+    }
+
+    public boolean hasLexicalError() {
+        return lexicalError != null;
+    }
+
+    /**
+     * Stops the lexer and waits for its thread to end; the iterator then
+     * ends after the tokens already in the ring
+     */
+    @Override
+    public void close() {
+        cancelled = true;
+        boolean interrupted = false;
+        while (lexer.isAlive()) {
+            try {
+                lexer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
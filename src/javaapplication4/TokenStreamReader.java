@@ -0,0 +1,159 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package javaapplication4;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads tokens stored by TokenStreamWriter. Tokens are decoded one at a
+ * time straight from the buffer (a mapped file when opened with open()),
+ * and each string of the table is decoded once, the first time a token
+ * uses it.
+ * @author Gerardo
+ */
+public class TokenStreamReader implements Iterator<Token> {
+
+    private final ByteBuffer data;
+    private final TokenType[] types;
+    private final int[] stringStarts;
+    private final int[] stringLengths;
+    private final String[] strings;
+    private final int count;
+    private int read;
+    private int offset;
+    private int line;
+    private int column;
+
+    public TokenStreamReader(ByteBuffer data) {
+        this.data = data.duplicate();
+        for (byte b : TokenStreamWriter.MAGIC) {
+            if (!this.data.hasRemaining() || this.data.get() != b) {
+                throw new IllegalArgumentException("Not a token stream");
+            }
+        }
+        int version = varint();
+        if (version != TokenStreamWriter.VERSION) {
+            throw new IllegalArgumentException("Unsupported token stream version " + version);
+        }
+
+        int typeCount = varint();
+        this.types = new TokenType[typeCount];
+        for (int i = 0; i < typeCount; i++) {
+            int length = varint();
+            types[i] = TokenType.valueOf(decode(this.data.position(), length));
+            skip(length);
+        }
+
+        int stringCount = varint();
+        this.stringStarts = new int[stringCount];
+        this.stringLengths = new int[stringCount];
+        this.strings = new String[stringCount];
+        for (int i = 0; i < stringCount; i++) {
+            stringLengths[i] = varint();
+            stringStarts[i] = this.data.position();
+            skip(stringLengths[i]);
+        }
+
+        this.count = varint();
+        this.read = 0;
+        this.offset = 0;
+        this.line = 0;
+        this.column = 0;
+    }
+
+    /**
+     * Maps a token stream file into memory and reads from the mapping
+     */
+    public static TokenStreamReader open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new TokenStreamReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Number of tokens in the stream
+     */
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return read < count;
+    }
+
+    @Override
+    public Token next() {
+        if (read >= count) {
+            throw new NoSuchElementException();
+        }
+        TokenType type = types[varint()];
+        offset += unzigzag(varint());
+        int lineDelta = unzigzag(varint());
+        line += lineDelta;
+        column = lineDelta == 0 ? column + unzigzag(varint()) : varint();
+        String lexeme = string(varint());
+        read++;
+        if (type == TokenType.ERROR) {
+            return new Token(lexeme, string(varint()), line, column, offset);
+        }
+        return new Token(lexeme, type, line, column, offset);
+    }
+
+    /**
+     * Reads the remaining tokens into a list
+     */
+    public List<Token> readAll() {
+        List<Token> tokens = new ArrayList<>(count - read);
+        while (hasNext()) {
+            tokens.add(next());
+        }
+        return tokens;
+    }
+
+    private String string(int index) {
+        String text = strings[index];
+        if (text == null) {
+            text = decode(stringStarts[index], stringLengths[index]);
+            strings[index] = text;
+        }
+        return text;
+    }
+
+    private String decode(int position, int length) {
+        byte[] utf8 = new byte[length];
+        data.get(position, utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private void skip(int length) {
+        data.position(data.position() + length);
+    }
+
+    private int varint() {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package javaapplication4;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes tokens in a compact binary format, read back by TokenStreamReader.
+ *
+ * Layout (all integers are unsigned LEB128 varints, signed ones zigzag encoded):
+ * <pre>
+ *   "TKS" version
+ *   type count, type names            TokenType names, so ordinals may change
+ *   string count, strings             UTF-8 length + bytes, each lexeme or
+ *                                     error message stored once
+ *   token count
+ *   per token: type index, offset delta, line delta, column (delta),
+ *              lexeme index [, message index for ERROR tokens]
+ * </pre>
+ * Offsets and lines are stored as the difference with the previous token,
+ * and so is the column when the line did not change, which keeps almost
+ * every field in a single byte.
+ * @author Gerardo
+ */
+public class TokenStreamWriter {
+
+    static final byte[] MAGIC = { 'T', 'K', 'S' };
+    static final int VERSION = 1;
+
+    private final Map<String, Integer> strings;
+    private final List<String> stringList;
+    private byte[] body;
+    private int bodySize;
+    private int count;
+    private int lastOffset;
+    private int lastLine;
+    private int lastColumn;
+
+    public TokenStreamWriter() {
+        this.strings = new HashMap<>();
+        this.stringList = new ArrayList<>();
+        this.body = new byte[1024];
+        this.bodySize = 0;
+        this.count = 0;
+        this.lastOffset = 0;
+        this.lastLine = 0;
+        this.lastColumn = 0;
+    }
+
+    public TokenStreamWriter add(Token token) {
+        int offset = token.getOffset();
+        int line = token.getLine();
+        int column = token.getColumn();
+        putVarint(token.getType().ordinal());
+        putVarint(zigzag(offset - lastOffset));
+        putVarint(zigzag(line - lastLine));
+        putVarint(line == lastLine ? zigzag(column - lastColumn) : column);
+        putVarint(intern(token.getLexeme()));
+        if (token.isError()) {
+            putVarint(intern(token.getErrorMessage()));
+        }
+        lastOffset = offset;
+        lastLine = line;
+        lastColumn = column;
+        count++;
+        return this;
+    }
+
+    public TokenStreamWriter addAll(Iterable<Token> tokens) {
+        for (Token token : tokens) {
+            add(token);
+        }
+        return this;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        byte[] header = header();
+        out.write(header);
+        out.write(body, 0, bodySize);
+        out.flush();
+    }
+
+    public void writeTo(Path file) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+            writeTo(out);
+        }
+    }
+
+    /**
+     * Convenience method: writes a token list to a file
+     */
+    public static void write(Iterable<Token> tokens, Path file) throws IOException {
+        new TokenStreamWriter().addAll(tokens).writeTo(file);
+    }
+
+    /**
+     * Index of a string in the table, null stored as the empty string
+     */
+    private int intern(String text) {
+        String key = text != null ? text : "";
+        Integer index = strings.get(key);
+        if (index == null) {
+            index = stringList.size();
+            strings.put(key, index);
+            stringList.add(key);
+        }
+        return index;
+    }
+
+    private byte[] header() {
+        Output out = new Output();
+        out.bytes(MAGIC, MAGIC.length);
+        out.varint(VERSION);
+        TokenType[] types = TokenType.values();
+        out.varint(types.length);
+        for (TokenType type : types) {
+            out.string(type.name());
+        }
+        out.varint(stringList.size());
+        for (String text : stringList) {
+            out.string(text);
+        }
+        out.varint(count);
+        return Arrays.copyOf(out.data, out.size);
+    }
+
+    private void putVarint(int value) {
+        if (bodySize + 5 > body.length) {
+            body = Arrays.copyOf(body, body.length * 2);
+        }
+        while ((value & ~0x7F) != 0) {
+            body[bodySize++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        body[bodySize++] = (byte) value;
+    }
+
+    static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    /**
+     * Growable byte array for the header
+     */
+    private static final class Output {
+        byte[] data = new byte[256];
+        int size;
+
+        void bytes(byte[] source, int length) {
+            if (size + length > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, size + length));
+            }
+            System.arraycopy(source, 0, data, size, length);
+            size += length;
+        }
+
+        void varint(int value) {
+            byte[] encoded = new byte[5];
+            int length = 0;
+            while ((value & ~0x7F) != 0) {
+                encoded[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            encoded[length++] = (byte) value;
+            bytes(encoded, length);
+        }
+
+        void string(String text) {
+            byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+            varint(utf8.length);
+            bytes(utf8, utf8.length);
+        }
+    }
+}